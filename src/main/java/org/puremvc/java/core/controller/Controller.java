@@ -6,8 +6,12 @@
 
 package org.puremvc.java.core.controller;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.puremvc.java.interfaces.ICommand;
 import org.puremvc.java.interfaces.IController;
@@ -15,6 +19,9 @@ import org.puremvc.java.interfaces.IFacade;
 import org.puremvc.java.interfaces.IFunction;
 import org.puremvc.java.interfaces.INotification;
 import org.puremvc.java.interfaces.IObserverRegistry;
+import org.puremvc.java.patterns.command.Reusable;
+import org.puremvc.java.patterns.command.RunsOn;
+import org.puremvc.java.patterns.observer.Affinity;
 import org.puremvc.java.patterns.observer.Notifier;
 import org.puremvc.java.patterns.observer.Observer;
 
@@ -55,6 +62,22 @@ public class Controller implements IController {
      */
     private final Map<String, Class<? extends ICommand>> commandMap;
 
+    /**
+     * Command Class references and Notification names by Notification id
+     */
+    private volatile Class<? extends ICommand>[] commandsById = newCommandTable(16);
+    private volatile String[] namesById = new String[16];
+
+    /**
+     * Instances of <code>Reusable</code> commands, once created
+     */
+    private final ConcurrentMap<Class<? extends ICommand>, ICommand> reusable;
+
+    /**
+     * Command classes known not to be <code>Reusable</code>
+     */
+    private final Set<Class<? extends ICommand>> disposable;
+
     /**
      * Local reference to View
      */
@@ -65,13 +88,17 @@ public class Controller implements IController {
     private final CommandFactory commandFactory;
 
     public Controller() {
-        this.commandMap = new HashMap<String, Class<? extends ICommand>>();
+        this.commandMap = new ConcurrentHashMap<String, Class<? extends ICommand>>();
+        this.reusable = new ConcurrentHashMap<Class<? extends ICommand>, ICommand>();
+        this.disposable = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends ICommand>, Boolean>());
         this.commandFactory = new DefaultCommandFactory();
         initializeController();
     }
 
     public Controller(CommandFactory commandFactory) {
-        this.commandMap = new HashMap<String, Class<? extends ICommand>>();
+        this.commandMap = new ConcurrentHashMap<String, Class<? extends ICommand>>();
+        this.reusable = new ConcurrentHashMap<Class<? extends ICommand>, ICommand>();
+        this.disposable = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends ICommand>, Boolean>());
         this.commandFactory = commandFactory;
         initializeController();
     }
@@ -111,17 +138,62 @@ public class Controller implements IController {
      *            an <code>INotification</code>
      */
     public void executeCommand(INotification note) {
-        Class<? extends ICommand> klass = this.commandMap.get(note.getName());
+        int id = note.getId();
+        String[] names = this.namesById;
+        Class<? extends ICommand>[] commands = this.commandsById;
+        Class<? extends ICommand> klass = null;
+        if (id >= 0 && id < names.length && id < commands.length && names[id] != null
+                && (names[id] == note.getName() || names[id].equals(note.getName()))) {
+            klass = commands[id];
+        }
+        if (klass == null) {
+            // not registered by id, or registered concurrently
+            klass = this.commandMap.get(note.getName());
+        }
         if (klass != null) {
-            this.commandFactory.create(klass).execute(note);
+            commandFor(klass).execute(note);
         }
     }
 
+    /**
+     * A new instance of the command, or the one instance of a
+     * <code>Reusable</code> command.
+     */
+    private ICommand commandFor(Class<? extends ICommand> klass) {
+        ICommand command = this.reusable.get(klass);
+        if (command == null) {
+            command = this.commandFactory.create(klass);
+            if (!this.disposable.contains(klass)) {
+                if (klass.isAnnotationPresent(Reusable.class)) {
+                    // another thread may have created one first
+                    ICommand first = this.reusable.putIfAbsent(klass, command);
+                    if (first != null) {
+                        command = first;
+                    }
+                } else {
+                    this.disposable.add(klass);
+                }
+            }
+        }
+        return command;
+    }
+
     /**
      * Register a particular <code>ICommand</code> class as the handler for a
      * particular <code>INotification</code>.
      * 
      * <P>
+     * A class marked <code>Reusable</code> is instantiated once and that
+     * instance handles every <code>INotification</code>; otherwise a new
+     * instance handles each one.
+     * </P>
+     * 
+     * <P>
+     * Under an <code>EventQueueView</code>, the command executes on a worker
+     * unless its class is marked with <code>RunsOn</code>.
+     * </P>
+     * 
+     * <P>
      * If an <code>ICommand</code> has already been registered to handle
      * <code>INotification</code>s with this name, it is no longer used, the new
      * <code>ICommand</code> is used instead.
@@ -135,19 +207,43 @@ public class Controller implements IController {
      * @param commandClassRef
      *            the <code>Class</code> of the <code>ICommand</code>
      */
-    public Class<? extends ICommand> registerCommand(String notificationName, Class<? extends ICommand> commandClassRef) {
+    public synchronized Class<? extends ICommand> registerCommand(String notificationName, Class<? extends ICommand> commandClassRef) {
         Class<? extends ICommand> prev = this.commandMap.put(notificationName, commandClassRef);
+        int id = this.observerRegistry.notificationId(notificationName);
+        if (id >= this.commandsById.length) {
+            int size = Math.max(id + 1, this.commandsById.length * 2);
+            this.commandsById = Arrays.copyOf(this.commandsById, size);
+            this.namesById = Arrays.copyOf(this.namesById, size);
+        }
+        this.commandsById[id] = commandClassRef;
+        this.namesById[id] = notificationName;
         if (prev == null) {
+            final String name = notificationName;
             this.observerRegistry.registerObserver(notificationName, new Observer(
                 new IFunction() {
                     public void onNotification(INotification notification) {
                         executeCommand(notification);
                     }
-                }, this));
+                }, this, Affinity.WORKER) {
+                    // the command registered now, which may have replaced the first
+                    @Override
+                    public Affinity getAffinity() {
+                        return affinityOf(commandMap.get(name));
+                    }
+                });
         }
         return prev;
     }
 
+    /**
+     * The thread a command class asks to execute on; commands without
+     * <code>RunsOn</code> execute on a worker.
+     */
+    private static Affinity affinityOf(Class<? extends ICommand> klass) {
+        RunsOn runsOn = klass == null ? null : klass.getAnnotation(RunsOn.class);
+        return runsOn == null ? Affinity.WORKER : runsOn.value();
+    }
+
     /**
      * Remove a previously registered <code>ICommand</code> to
      * <code>INotification</code> mapping.
@@ -156,10 +252,21 @@ public class Controller implements IController {
      *            the name of the <code>INotification</code> to remove the
      *            <code>ICommand</code> mapping for
      */
-    public Class<? extends ICommand> removeCommand(String notificationName) {
+    public synchronized Class<? extends ICommand> removeCommand(String notificationName) {
+        for (int id = 0; id < this.namesById.length; id++) {
+            if (notificationName.equals(this.namesById[id])) {
+                this.commandsById[id] = null;
+                this.namesById[id] = null;
+            }
+        }
         return this.commandMap.remove(notificationName);
     }
 
+    @SuppressWarnings("unchecked")
+    private static Class<? extends ICommand>[] newCommandTable(int size) {
+        return (Class<? extends ICommand>[]) new Class<?>[size];
+    }
+
     public IFacade getFacade() {
         return facade;
     }
@@ -6,8 +6,8 @@
 
 package org.puremvc.java.core.model;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.puremvc.java.interfaces.IModel;
 import org.puremvc.java.interfaces.IProxy;
@@ -36,6 +36,11 @@ import org.puremvc.java.interfaces.IProxy;
  * initialized the Core actors.
  * </p>
  * 
+ * <P>
+ * Proxies may be registered, retrieved and removed from several threads at
+ * once, for instance by commands executing on workers.
+ * </P>
+ * 
  * @see org.puremvc.java.patterns.proxy.Proxy Proxy
  * @see org.puremvc.java.interfaces.IProxy IProxy
  */
@@ -59,7 +64,7 @@ public class Model implements IModel {
      * 
      */
     public Model() {
-        this.proxyMap = new HashMap<String, IProxy>();
+        this.proxyMap = new ConcurrentHashMap<String, IProxy>();
         initializeModel();
     }
 
@@ -0,0 +1,220 @@
+/*
+   PureMVC Java Port by Donald Stinchfield <donald.stinchfield@puremvc.org>, et al.
+   PureMVC - Copyright(c) 2006-08 Futurescale, Inc., Some rights reserved.
+   Your reuse is governed by the Creative Commons Attribution 3.0 License
+ */
+
+package org.puremvc.java.core.view;
+
+import java.awt.EventQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.puremvc.java.interfaces.INotification;
+import org.puremvc.java.interfaces.IObserver;
+import org.puremvc.java.patterns.observer.Affinity;
+
+/**
+ * An <code>IView</code> that queues notifications instead of notifying
+ * observers in the sender's stack.
+ *
+ * <P>
+ * <code>notifyObservers</code> only puts the <code>INotification</code> on a
+ * queue. A dispatcher thread takes notifications from the queue one at a time,
+ * in the order they were sent, and runs each to completion: every
+ * <code>IObserver</code> is notified, in the order registered, before the next
+ * <code>INotification</code> is taken. A notification sent while handling
+ * another waits its turn, so handlers never nest.
+ * </P>
+ *
+ * <P>
+ * Each <code>IObserver</code> is notified on the thread its
+ * <code>Affinity</code> asks for: the Swing event dispatch thread for
+ * <code>UI</code>, a pool of workers for <code>WORKER</code>, and the
+ * dispatcher itself for <code>ANY</code>.
+ * </P>
+ *
+ * <P>
+ * Observers may be registered and removed from any thread; a notification
+ * goes to the observers registered when the dispatcher takes it.
+ * </P>
+ *
+ * @see org.puremvc.java.patterns.observer.Affinity Affinity
+ */
+public class EventQueueView extends View {
+
+	private final BlockingQueue<INotification> queue;
+
+	private final ExecutorService workers;
+
+	private final Executor ui;
+
+	private final Thread dispatcher;
+
+	// notifications sent and not yet handled; guarded by this
+	private int pending;
+
+	/**
+	 * Constructor, with a worker per processor.
+	 */
+	public EventQueueView() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads
+	 *            the number of workers for <code>WORKER</code> observers
+	 */
+	public EventQueueView(int threads) {
+		this.queue = new LinkedBlockingQueue<INotification>();
+		this.workers = Executors.newFixedThreadPool(threads, daemons("puremvc-worker"));
+		this.ui = new Executor() {
+			public void execute(Runnable r) {
+				EventQueue.invokeLater(r);
+			}
+		};
+		this.dispatcher = daemons("puremvc-dispatch").newThread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		});
+		this.dispatcher.start();
+	}
+
+	/**
+	 * Queue a <code>Notification</code> for its <code>Observers</code>.
+	 *
+	 * @param note
+	 *            the <code>Notification</code> to notify <code>Observers</code>
+	 *            of.
+	 */
+	@Override
+	public void notifyObservers(INotification note) {
+		if (note == null) {
+			throw new NullPointerException();
+		}
+		synchronized (this) {
+			this.pending++;
+		}
+		this.queue.add(note);
+	}
+
+	/**
+	 * Wait until every queued <code>Notification</code>, and any sent while
+	 * handling them, has been handled.
+	 *
+	 * @return false if the time ran out first
+	 */
+	public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (this.pending > 0) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+		return true;
+	}
+
+	/**
+	 * Stop dispatching. Queued notifications are dropped.
+	 */
+	public void shutdown() {
+		this.dispatcher.interrupt();
+		this.workers.shutdown();
+	}
+
+	/**
+	 * The executor for observers of the given affinity, or null to notify on
+	 * the dispatcher.
+	 */
+	protected Executor executorFor(Affinity affinity) {
+		switch (affinity) {
+		case UI:
+			return this.ui;
+		case WORKER:
+			return this.workers;
+		default:
+			return null;
+		}
+	}
+
+	private void dispatch() {
+		try {
+			while (true) {
+				INotification note = this.queue.take();
+				try {
+					for (IObserver o : observersOf(note)) {
+						notify(o, note);
+					}
+				} finally {
+					synchronized (this) {
+						this.pending--;
+						notifyAll();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// shut down
+		}
+	}
+
+	// notify one observer on its thread, and wait for it to finish
+	private void notify(final IObserver o, final INotification note) throws InterruptedException {
+		Executor executor = executorFor(o.getAffinity());
+		if (executor == null || (executor == this.ui && EventQueue.isDispatchThread())) {
+			run(o, note);
+			return;
+		}
+		FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+			public void run() {
+				o.notifyObserver(note);
+			}
+		}, null);
+		executor.execute(task);
+		try {
+			task.get();
+		} catch (ExecutionException e) {
+			failed(e.getCause());
+		}
+	}
+
+	private void run(IObserver o, INotification note) {
+		try {
+			o.notifyObserver(note);
+		} catch (RuntimeException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * An observer failed; the dispatcher carries on with the next. By default
+	 * the failure goes to the dispatcher's uncaught exception handler.
+	 */
+	protected void failed(Throwable t) {
+		Thread self = Thread.currentThread();
+		self.getUncaughtExceptionHandler().uncaughtException(self, t);
+	}
+
+	private static ThreadFactory daemons(final String name) {
+		return new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, count++ == 0 ? name : name + "-" + count);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+}
@@ -6,15 +6,16 @@
 
 package org.puremvc.java.core.view;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.puremvc.java.interfaces.IFunction;
 import org.puremvc.java.interfaces.IMediator;
 import org.puremvc.java.interfaces.INotification;
 import org.puremvc.java.interfaces.IObserver;
 import org.puremvc.java.interfaces.IView;
+import org.puremvc.java.patterns.observer.Affinity;
 import org.puremvc.java.patterns.observer.Observer;
 import org.puremvc.java.patterns.observer.Observers;
 
@@ -36,6 +37,13 @@ import org.puremvc.java.patterns.observer.Observers;
  * <code>INotification</code> when it broadcast.</LI>
  * </UL>
  * 
+ * <P>
+ * A <code>View</code> may be used from several threads. Observer lists are
+ * copied on write, so broadcasting takes no lock, and an
+ * <code>INotification</code> is delivered to the observers registered when
+ * its broadcast began.
+ * </P>
+ * 
  * @see org.puremvc.java.patterns.mediator.Mediator Mediator
  * @see org.puremvc.java.patterns.observer.Observer Observer
  * @see org.puremvc.java.patterns.observer.Notification Notification
@@ -44,8 +52,28 @@ public class View implements IView {
 
 	// Mapping of Mediator names to Mediator instances
 	private final Map<String, IMediator> mediatorMap;
-	// Mapping of Notification names to Observer lists
-	private final Map<String, Observers> observerMap;
+	// Mapping of Mediator names to the Observer registered for each
+	private final Map<String, Registration> registrations;
+	// Mapping of Notification names to ids
+	private final Map<String, Integer> notificationIds;
+	// Observer lists by Notification id; replaced when a name is interned
+	private volatile Observers[] observers;
+	// Guards interning
+	private final Object interning = new Object();
+
+	/**
+	 * The <code>Observer</code> of a <code>Mediator</code>, and the ids of the
+	 * notifications it was registered for.
+	 */
+	private static final class Registration {
+		final IObserver observer;
+		final int[] ids;
+
+		Registration(IObserver observer, int[] ids) {
+			this.observer = observer;
+			this.ids = ids;
+		}
+	}
 
 	/**
 	 * Constructor.
@@ -60,8 +88,10 @@ public class View implements IView {
 	 * 
 	 */
 	public View() {
-		this.mediatorMap = new HashMap<String, IMediator>();
-		this.observerMap = new HashMap<String, Observers>();
+		this.mediatorMap = new ConcurrentHashMap<String, IMediator>();
+		this.registrations = new ConcurrentHashMap<String, Registration>();
+		this.notificationIds = new ConcurrentHashMap<String, Integer>();
+		this.observers = new Observers[0];
 		initializeView();
 	}
 
@@ -95,12 +125,71 @@ public class View implements IView {
 	 *            of.
 	 */
 	public void notifyObservers(INotification note) {
-		Observers observers = this.observerMap.get(note.getName());
-		if (observers != null) {
-			observers.notifyObservers(note);
+		int id = resolve(note);
+		if (id >= 0) {
+			this.observers[id].notifyObservers(note);
 		}
 	}
 
+	/**
+	 * The <code>Observers</code> to notify of a <code>Notification</code>,
+	 * in the order in which they were registered.
+	 * 
+	 * @param note
+	 *            the <code>Notification</code>
+	 * @return a copy of the observer list, empty if nobody is interested
+	 */
+	protected IObserver[] observersOf(INotification note) {
+		int id = resolve(note);
+		return id >= 0 ? this.observers[id].toArray() : new IObserver[0];
+	}
+
+	/**
+	 * Intern a <code>Notification</code> name.
+	 * 
+	 * @param notificationName
+	 *            the name of the <code>Notification</code>
+	 * @return the id of the name, which is its index in the dispatch table
+	 */
+	public int notificationId(String notificationName) {
+		Integer id = this.notificationIds.get(notificationName);
+		if (id != null) {
+			return id.intValue();
+		}
+		synchronized (this.interning) {
+			id = this.notificationIds.get(notificationName);
+			if (id != null) {
+				return id.intValue();
+			}
+			Observers[] table = this.observers;
+			int next = table.length;
+			table = Arrays.copyOf(table, next + 1);
+			table[next] = new Observers(notificationName);
+			this.observers = table;
+			this.notificationIds.put(notificationName, Integer.valueOf(next));
+			return next;
+		}
+	}
+
+	/**
+	 * The id of the <code>Notification</code>'s name, or -1 if nobody has
+	 * asked for it. A carried id is trusted only if it names the same
+	 * <code>Notification</code> here.
+	 */
+	private int resolve(INotification note) {
+		int id = note.getId();
+		String name = note.getName();
+		Observers[] table = this.observers;
+		if (id >= 0 && id < table.length) {
+			String interned = table[id].getNotification();
+			if (interned == name || interned.equals(name)) {
+				return id;
+			}
+		}
+		Integer known = this.notificationIds.get(name);
+		return known == null ? -1 : known.intValue();
+	}
+
 	/**
 	 * Register an <code>Mediator</code> instance with the <code>View</code>.
 	 * 
@@ -139,11 +228,16 @@ public class View implements IView {
 			}
 		};
 
-		// Create Observer
-		Observer observer = new Observer(function, mediator);
+		// Create Observer; mediators belong to the user interface
+		Observer observer = new Observer(function, mediator, Affinity.UI);
 
 		// Register Mediator as Observer for its list of Notification
-		// interests
+		// interests, and remember where, for removal
+		int[] ids = new int[noteInterests.length];
+		for (int i = 0; i < noteInterests.length; i++) {
+			ids[i] = notificationId(noteInterests[i]);
+		}
+		this.registrations.put(mediator.getMediatorName(), new Registration(observer, ids));
 		for (int i = 0; i < noteInterests.length; i++) {
 			registerObserver(noteInterests[i], observer);
 		}
@@ -160,43 +254,32 @@ public class View implements IView {
 	 *            the <code>Observer</code> to register
 	 */
 	public void registerObserver(String notificationName, IObserver observer) {
-		if (this.observerMap.get(notificationName) != null) {
-			this.observerMap.get(notificationName).addObserver(observer);
-		} else {
-			this.observerMap.put(notificationName, new Observers(notificationName, observer));
-		}
+		int id = notificationId(notificationName);
+		this.observers[id].addObserver(observer);
 	}
 
 	/**
 	 * Remove an <code>Mediator</code> from the <code>View</code>.
 	 * 
+	 * <P>
+	 * Only the lists of the <code>Notification</code>s the
+	 * <code>Mediator</code> registered an interest in are visited.
+	 * </P>
+	 * 
 	 * @param mediatorName
 	 *            name of the <code>Mediator</code> instance to be removed.
 	 */
 	public IMediator removeMediator(String mediatorName) {
-		// Remove all Observers with a reference to this Mediator
-		// also, when an notification's observer list length falls to
-		// zero, remove it.
-		IMediator m = retrieveMediator(mediatorName);
-
-		for (Iterator<Observers> its = this.observerMap.values().iterator(); its.hasNext(); ) {
-			Observers o = its.next();
-			boolean retaining = false;
-			for (Iterator<IObserver> it = o.iterator(); it.hasNext(); ) {
-				IObserver i = it.next();
-				if (i.compareNotifyContext(m)) {
-					it.remove();
-				} else {
-					retaining = true;
-				}
-			}
-			if (!retaining) {
-				its.remove();
+		// Remove the Observer registered for this Mediator
+		Registration r = this.registrations.remove(mediatorName);
+		if (r != null) {
+			Observers[] table = this.observers;
+			for (int id : r.ids) {
+				table[id].deleteObserver(r.observer);
 			}
 		}
 		// Remove the reference to the Mediator itself
-		return (IMediator) this.mediatorMap.remove(mediatorName);
-
+		return this.mediatorMap.remove(mediatorName);
 	}
 
 	/**
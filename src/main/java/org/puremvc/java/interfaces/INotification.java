@@ -53,6 +53,19 @@ public interface INotification {
 	 */
 	String getName();
 
+	/**
+	 * Get the interned id of the <code>INotification</code> name, as given by
+	 * <code>IObserverRegistry.notificationId</code>, or -1 if it is not known.
+	 * 
+	 * <P>
+	 * The id lets the <code>View</code> and <code>Controller</code> dispatch
+	 * by array index instead of looking up the name.
+	 * </P>
+	 * 
+	 * @return the id, or -1
+	 */
+	int getId();
+
 	/**
 	 * Set the body of the <code>INotification</code> instance
 	 * 
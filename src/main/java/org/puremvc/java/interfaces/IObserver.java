@@ -6,6 +6,8 @@
 
 package org.puremvc.java.interfaces;
 
+import org.puremvc.java.patterns.observer.Affinity;
+
 /**
  * The interface definition for a PureMVC Observer.
  * 
@@ -86,4 +88,11 @@ public interface IObserver {
 	 *         the same.
 	 */
 	boolean compareNotifyContext(Object object);
+
+	/**
+	 * The thread the interested object wants to be notified on.
+	 * 
+	 * @return the <code>Affinity</code> of the interested object
+	 */
+	Affinity getAffinity();
 }
@@ -23,6 +23,21 @@ public interface IObserverRegistry {
 	 */
 	void registerObserver(String noteName, IObserver observer);
 
+	/**
+	 * Intern a notification name.
+	 * 
+	 * <P>
+	 * Ids are small integers, assigned in order of first use, so they may
+	 * index dispatch tables. A notification carrying its id is dispatched
+	 * without looking up its name.
+	 * </P>
+	 * 
+	 * @param noteName
+	 *            the name of the <code>INotifications</code>
+	 * @return the id of the name
+	 */
+	int notificationId(String noteName);
+
 	/**
 	 * Notify the <code>IObservers</code> for a particular
 	 * <code>INotification</code>.
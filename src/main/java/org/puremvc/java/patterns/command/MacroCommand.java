@@ -7,11 +7,19 @@
 package org.puremvc.java.patterns.command;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.puremvc.java.core.controller.CommandFactory;
 import org.puremvc.java.interfaces.ICommand;
 import org.puremvc.java.interfaces.INotification;
+import org.puremvc.java.patterns.observer.Affinity;
 import org.puremvc.java.patterns.observer.Notifier;
 
 import com.google.inject.*;
@@ -43,6 +51,15 @@ import com.google.inject.*;
  * </P>
  * 
  * <P>
+ * A <i>SubCommand</i> may name the earlier <i>SubCommands</i> it depends on,
+ * instead of following all of them. A <i>SubCommand</i> marked
+ * <code>@RunsOn(Affinity.WORKER)</code> then runs on a thread of its own as
+ * soon as those are done, alongside the <i>SubCommands</i> that do not depend
+ * on it, which go on running on the calling thread. <code>execute</code>
+ * returns when every <i>SubCommand</i> is done.
+ * </P>
+ * 
+ * <P>
  * 
  * @see org.puremvc.java.core.controller.Controller Controller
  * @see org.puremvc.java.patterns.observer.Notification Notification
@@ -51,6 +68,8 @@ import com.google.inject.*;
 public class MacroCommand extends Notifier implements ICommand {
 
 	private final List<Class<? extends ICommand>> subCommands;
+
+	private final Map<Class<? extends ICommand>, List<Class<? extends ICommand>>> dependencies;
 	
 	private final CommandFactory commandFactory;
 
@@ -70,6 +89,7 @@ public class MacroCommand extends Notifier implements ICommand {
 	@Inject
     public MacroCommand(CommandFactory subcommandFactory) {
 		this.subCommands = new ArrayList<Class<? extends ICommand>>(4);
+		this.dependencies = new HashMap<Class<? extends ICommand>, List<Class<? extends ICommand>>>(4);
         this.commandFactory = subcommandFactory;
 		initializeMacroCommand();
 	}
@@ -110,7 +130,55 @@ public class MacroCommand extends Notifier implements ICommand {
 	 *            <code>ICommand</code>.
 	 */
 	protected void addSubCommand(Class<? extends ICommand> commandClassRef) {
+		addSubCommand(commandClassRef, new ArrayList<Class<? extends ICommand>>(this.subCommands));
+	}
+
+	/**
+	 * Add a <i>SubCommand</i> that depends only on the given <i>SubCommand</i>.
+	 * 
+	 * @see #addSubCommand(Class, List)
+	 */
+	protected void addSubCommand(Class<? extends ICommand> commandClassRef, Class<? extends ICommand> after) {
+		List<Class<? extends ICommand>> l = new ArrayList<Class<? extends ICommand>>(1);
+		l.add(after);
+		addSubCommand(commandClassRef, l);
+	}
+
+	/**
+	 * Add a <i>SubCommand</i> that depends only on the two given <i>SubCommands</i>.
+	 * 
+	 * @see #addSubCommand(Class, List)
+	 */
+	protected void addSubCommand(Class<? extends ICommand> commandClassRef, Class<? extends ICommand> after, Class<? extends ICommand> andAfter) {
+		List<Class<? extends ICommand>> l = new ArrayList<Class<? extends ICommand>>(2);
+		l.add(after);
+		l.add(andAfter);
+		addSubCommand(commandClassRef, l);
+	}
+
+	/**
+	 * Add a <i>SubCommand</i> that depends only on the given <i>SubCommands</i>.
+	 * 
+	 * <P>
+	 * The <i>SubCommand</i> is executed once all of them are done, and may
+	 * run at the same time as any other <i>SubCommand</i>.
+	 * </P>
+	 * 
+	 * @param commandClassRef
+	 *            a reference to the <code>Class</code> of the
+	 *            <code>ICommand</code>.
+	 * @param after
+	 *            the <i>SubCommands</i> it depends on, which must already
+	 *            have been added.
+	 */
+	protected void addSubCommand(Class<? extends ICommand> commandClassRef, List<Class<? extends ICommand>> after) {
+		for (Class<? extends ICommand> k : after) {
+			if (!this.subCommands.contains(k)) {
+				throw new IllegalArgumentException(commandClassRef.getName() + " depends on " + k.getName() + ", which has not been added");
+			}
+		}
 		this.subCommands.add(commandClassRef);
+		this.dependencies.put(commandClassRef, new ArrayList<Class<? extends ICommand>>(after));
 	}
 
 	/**
@@ -123,9 +191,58 @@ public class MacroCommand extends Notifier implements ICommand {
 	 *            the <code>INotification</code> object to be passsed to each
 	 *            <i>SubCommand</i>.
 	 */
-	public void execute(INotification notification) {
-		for (Class<? extends ICommand> k : this.subCommands) {
-			this.commandFactory.create(k).execute(notification);
+	public void execute(final INotification notification) {
+		Map<Class<? extends ICommand>, Future<?>> started = new HashMap<Class<? extends ICommand>, Future<?>>();
+		for (final Class<? extends ICommand> k : this.subCommands) {
+			final List<Future<?>> before = new ArrayList<Future<?>>();
+			for (Class<? extends ICommand> d : this.dependencies.get(k)) {
+				before.add(started.get(d));
+			}
+			FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() {
+					join(before);
+					commandFactory.create(k).execute(notification);
+					return null;
+				}
+			});
+			started.put(k, task);
+			RunsOn where = k.getAnnotation(RunsOn.class);
+			if (where != null && where.value() == Affinity.WORKER) {
+				Thread t = new Thread(task, k.getSimpleName());
+				t.setDaemon(true);
+				t.start();
+			} else {
+				task.run();
+				join(Arrays.<Future<?>> asList(task));
+			}
+		}
+		join(started.values());
+	}
+
+	/**
+	 * Wait for some <i>SubCommands</i> to be done, passing on the first
+	 * failure.
+	 */
+	private static void join(Iterable<Future<?>> tasks) {
+		boolean interrupted = false;
+		try {
+			for (Future<?> f : tasks) {
+				while (true) {
+					try {
+						f.get();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException e) {
+						Throwable t = e.getCause();
+						if (t instanceof RuntimeException) throw (RuntimeException) t;
+						if (t instanceof Error) throw (Error) t;
+						throw new RuntimeException(t);
+					}
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
 		}
 	}
 }
@@ -0,0 +1,31 @@
+/*
+   PureMVC Java Port by Donald Stinchfield <donald.stinchfield@puremvc.org>, et al.
+   PureMVC - Copyright(c) 2006-08 Futurescale, Inc., Some rights reserved.
+   Your reuse is governed by the Creative Commons Attribution 3.0 License
+ */
+
+package org.puremvc.java.patterns.command;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an <code>ICommand</code> that keeps no state between executions.
+ * 
+ * <P>
+ * The <code>Controller</code> creates a reusable command once, when it is
+ * first needed, and executes that instance for every later
+ * <code>INotification</code>, instead of asking its
+ * <code>CommandFactory</code> for a new instance each time.
+ * </P>
+ * 
+ * @see org.puremvc.java.core.controller.Controller Controller
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Reusable {
+}
@@ -0,0 +1,34 @@
+/*
+   PureMVC Java Port by Donald Stinchfield <donald.stinchfield@puremvc.org>, et al.
+   PureMVC - Copyright(c) 2006-08 Futurescale, Inc., Some rights reserved.
+   Your reuse is governed by the Creative Commons Attribution 3.0 License
+ */
+
+package org.puremvc.java.patterns.command;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.puremvc.java.patterns.observer.Affinity;
+
+/**
+ * Declares the thread an <code>ICommand</code> must execute on when
+ * notifications are dispatched by an <code>EventQueueView</code>.
+ * 
+ * <P>
+ * Commands without this annotation are model commands, and execute on a
+ * worker. A command that builds or touches the user interface should be
+ * marked <code>@RunsOn(Affinity.UI)</code>.
+ * </P>
+ * 
+ * @see org.puremvc.java.core.view.EventQueueView EventQueueView
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface RunsOn {
+	Affinity value();
+}
@@ -272,7 +272,7 @@ public class Facade implements IFacade {
      *            the type of the notification (optional)
      */
     public void sendNotification(String notificationName, Object body, String type) {
-        notifyObservers(new Notification(notificationName, body, type));
+        notifyObservers(new Notification(this.view.notificationId(notificationName), notificationName, body, type));
     }
 
     /**
@@ -0,0 +1,27 @@
+/*
+   PureMVC Java Port by Donald Stinchfield <donald.stinchfield@puremvc.org>, et al.
+   PureMVC - Copyright(c) 2006-08 Futurescale, Inc., Some rights reserved.
+   Your reuse is governed by the Creative Commons Attribution 3.0 License
+ */
+
+package org.puremvc.java.patterns.observer;
+
+/**
+ * The thread an <code>IObserver</code> wants to be notified on.
+ * 
+ * <P>
+ * The plain <code>View</code> notifies every <code>IObserver</code> on the
+ * thread that sent the <code>INotification</code>, and ignores affinity. An
+ * <code>EventQueueView</code> honors it.
+ * </P>
+ * 
+ * @see org.puremvc.java.core.view.EventQueueView EventQueueView
+ */
+public enum Affinity {
+	/** Any thread will do: notify on the dispatching thread. */
+	ANY,
+	/** The user interface thread, i.e. the Swing event dispatch thread. */
+	UI,
+	/** A background worker, off the user interface thread. */
+	WORKER
+}
@@ -54,6 +54,9 @@ public class Notification implements INotification {
 	// the body of the notification instance
 	private Object body = null;
 
+	// the interned id of the name, or -1
+	private final int id;
+
 	/**
 	 * Constructor.
 	 * 
@@ -65,6 +68,24 @@ public class Notification implements INotification {
 	 *            the type of the <code>Notification</code> (optional)
 	 */
 	public Notification(String name, Object body, String type) {
+		this(-1, name, body, type);
+	}
+
+	/**
+	 * Constructor for a notification whose name has been interned.
+	 * 
+	 * @param id
+	 *            the id of the name, from
+	 *            <code>IObserverRegistry.notificationId</code>
+	 * @param name
+	 *            name of the <code>Notification</code> instance.
+	 * @param body
+	 *            the <code>Notification</code> body.
+	 * @param type
+	 *            the type of the <code>Notification</code>
+	 */
+	public Notification(int id, String name, Object body, String type) {
+		this.id = id;
 		this.name = name;
 		this.body = body;
 		this.type = type;
@@ -88,6 +109,16 @@ public class Notification implements INotification {
 		return this.name;
 	}
 
+	/**
+	 * Get the interned id of the name of the <code>Notification</code>
+	 * instance.
+	 * 
+	 * @return the id, or -1 if the name was not interned
+	 */
+	public int getId() {
+		return this.id;
+	}
+
 	/**
 	 * Get the type of the <code>Notification</code> instance.
 	 * 
@@ -37,6 +37,8 @@ public class Observer implements IObserver {
 
 	private IFunction notify;
 
+	private final Affinity affinity;
+
 	/**
 	 * Constructor.
 	 * 
@@ -51,8 +53,27 @@ public class Observer implements IObserver {
 	 *            the notification context of the interested object
 	 */
 	public Observer( IFunction notify, Object context ) {
+		this( notify, context, Affinity.ANY );
+	}
+
+	/**
+	 * Constructor for an <code>Observer</code> that wants to be notified on
+	 * a particular thread.
+	 * 
+	 * @param notify
+	 *            the notification method of the interested object
+	 * @param context
+	 *            the notification context of the interested object
+	 * @param affinity
+	 *            the thread to notify the interested object on
+	 */
+	public Observer( IFunction notify, Object context, Affinity affinity ) {
+		if (affinity == null) {
+			throw new NullPointerException();
+		}
 		this.setNotifyContext( context );
 		this.setNotifyMethod( notify );
+		this.affinity = affinity;
 	}
 
 	/**
@@ -122,4 +143,13 @@ public class Observer implements IObserver {
 		return this.context;
 	}
 
+	/**
+	 * Get the thread affinity.
+	 * 
+	 * @return the thread the interested object wants to be notified on.
+	 */
+	public Affinity getAffinity() {
+		return this.affinity;
+	}
+
 }
@@ -6,9 +6,8 @@
 
 package org.puremvc.java.patterns.observer;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 import org.puremvc.java.interfaces.INotification;
 import org.puremvc.java.interfaces.IObserver;
@@ -16,11 +15,17 @@ import org.puremvc.java.interfaces.IObserver;
 /**
  * Helper class that contains all observers for a notification
  * 
+ * <P>
+ * The observer list is copied on write: adding or deleting an observer
+ * replaces the array, so notifying and iterating read a snapshot without
+ * locking, and may run while observers are added or deleted on other threads.
+ * </P>
+ * 
  * @see org.puremvc.java.interfaces IObservers
  * @see org.puremvc.java.interfaces INotification
  */
 public class Observers implements Iterable<IObserver> {
-	private final List<IObserver> observers;
+	private volatile IObserver[] observers;
 
 	private final String notificationName;
 
@@ -31,11 +36,23 @@ public class Observers implements Iterable<IObserver> {
 	 * @param observer
 	 */
 	public Observers(String note, IObserver observer) {
-		if (note == null || observer == null) {
+		this(note);
+		if (observer == null) {
 			throw new NullPointerException();
 		}
-        this.observers = new ArrayList<IObserver>();
-        this.observers.add(observer);
+        this.observers = new IObserver[] { observer };
+	}
+
+	/**
+	 * Constructor for an empty list
+	 * 
+	 * @param note
+	 */
+	public Observers(String note) {
+		if (note == null) {
+			throw new NullPointerException();
+		}
+        this.observers = new IObserver[0];
         this.notificationName = note;
 	}
 
@@ -44,11 +61,13 @@ public class Observers implements Iterable<IObserver> {
 	 * 
 	 * @param observer
 	 */
-	public void addObserver(IObserver observer) {
+	public synchronized void addObserver(IObserver observer) {
 		if (observer == null) {
 			throw new NullPointerException();
 		}
-        this.observers.add(observer);
+        IObserver[] next = Arrays.copyOf(this.observers, this.observers.length + 1);
+        next[next.length - 1] = observer;
+        this.observers = next;
 	}
 
 	/**
@@ -57,15 +76,46 @@ public class Observers implements Iterable<IObserver> {
 	 * 
 	 * @param observer
 	 */
-	public void deleteObserver(IObserver observer) {
+	public synchronized void deleteObserver(IObserver observer) {
 		if (observer == null) {
 			throw new NullPointerException();
 		}
-        this.observers.remove(observer);
+        IObserver[] current = this.observers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(observer)) {
+                IObserver[] next = new IObserver[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, next.length - i);
+                this.observers = next;
+                return;
+            }
+        }
 	}
-	
+
+	/**
+	 * Iterate over a snapshot of the observers; the iterator does not support
+	 * <code>remove</code>.
+	 */
 	public Iterator<IObserver> iterator() {
-		return this.observers.iterator();
+		return Arrays.asList(this.observers).iterator();
+	}
+
+	/**
+	 * A snapshot of the observers, in the order added
+	 * 
+	 * @return the observers
+	 */
+	public IObserver[] toArray() {
+		return this.observers.clone();
+	}
+
+	/**
+	 * True if there are no observers
+	 * 
+	 * @return boolean
+	 */
+	public boolean isEmpty() {
+		return this.observers.length == 0;
 	}
 
 	/**
@@ -0,0 +1,350 @@
+package hom
+
+import java.io.{ByteArrayOutputStream, DataOutputStream, File, FileOutputStream, BufferedOutputStream, InputStream, OutputStream, RandomAccessFile}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.nio.channels.FileChannel
+
+import scala.collection.mutable.ListBuffer
+
+import Directions._
+import LineColors._
+
+/**
+ * A compact binary encoding of levels (.homb) and whole packs (.hompb).
+ *
+ * A level is its bounds, then the fixed and moveable gates as packed records:
+ * type, x, y, and a byte holding direction (low three bits) and color mask (next three bits).
+ * Wormholes add the position of their twin.
+ *
+ * A pack holds its unlocked levels, its trace limits if it sets any, and an index of entries, each with
+ * the offset of its level record, followed by the level records. Packs on the filesystem are memory mapped, so any level may be
+ * decoded without reading the others.
+ */
+object BinaryFormat {
+
+  val LevelMagic = 0x484f4d4c // HOML
+  val PackMagic = 0x484f4d50 // HOMP
+  val Version: Short = 2
+
+  // gate type codes, in the order of the level file vocabulary
+  private val SourceType = 0
+  private val ConduitType = 1
+  private val MirrorType = 2
+  private val PrismType = 3
+  private val PartialMirrorType = 4
+  private val CrossMirrorType = 5
+  private val DetectorType = 6
+  private val BlockerType = 7
+  private val WormHoleType = 8
+
+  // which trace limits a pack sets
+  private val LimitsSet = 1
+  private val RaysSet = 2
+  private val SegmentsSet = 4
+  private val MillisSet = 8
+
+  private val UTF8 = java.nio.charset.Charset.forName("UTF-8")
+
+  // writing
+
+  def writeLevel(g: GameLevel, out: OutputStream) {
+    val d = new DataOutputStream(out)
+    d.writeInt(LevelMagic)
+    d.writeShort(Version)
+    writeLevelBody(g, d)
+    d.flush()
+  }
+
+  def writeLevel(g: GameLevel, f: File) {
+    val out = new BufferedOutputStream(new FileOutputStream(f))
+    try {
+      writeLevel(g, out)
+    } finally {
+      out.close()
+    }
+  }
+
+  /**
+   * Write the pack and all of its levels.
+   */
+  def writePack(pack: GamePack, out: OutputStream) {
+    val entries = pack.entries
+    val data = new ByteArrayOutputStream
+    val offsets = new ListBuffer[(Int, Int)]
+    for (e <- entries) {
+      val start = data.size
+      val d = new DataOutputStream(data)
+      writeLevelBody(pack.levelTemplate(e.id).instantiate(e.id), d)
+      d.flush()
+      offsets += ((start, data.size - start))
+    }
+    val d = new DataOutputStream(out)
+    d.writeInt(PackMagic)
+    d.writeShort(Version)
+    val unlocked = pack.unlockedLevels.toList.sortWith(_ < _)
+    d.writeInt(unlocked.length)
+    unlocked.foreach(d.writeInt)
+    // whether the pack sets limits, and which, then those it sets
+    pack.traceLimits match {
+      case Some(b) =>
+        d.writeByte(LimitsSet | (if (b.rays.isDefined) RaysSet else 0) | (if (b.segments.isDefined) SegmentsSet else 0) |
+          (if (b.millis.isDefined) MillisSet else 0))
+        b.rays.foreach(d.writeInt)
+        b.segments.foreach(d.writeInt)
+        b.millis.foreach(d.writeLong)
+      case None => d.writeByte(0)
+    }
+    d.writeInt(entries.length)
+    for ((e, (offset, length)) <- entries zip offsets) {
+      d.writeInt(e.id)
+      writeString(e.file, d)
+      d.writeInt(e.unlock.length)
+      e.unlock.foreach(d.writeInt)
+      d.writeInt(offset)
+      d.writeInt(length)
+    }
+    data.writeTo(d)
+    d.flush()
+  }
+
+  def writePack(pack: GamePack, f: File) {
+    val out = new BufferedOutputStream(new FileOutputStream(f))
+    try {
+      writePack(pack, out)
+    } finally {
+      out.close()
+    }
+  }
+
+  private def writeLevelBody(g: GameLevel, d: DataOutputStream) {
+    writeString(g.description, d)
+    d.writeInt(g.bounds.x)
+    d.writeInt(g.bounds.y)
+    d.writeInt(g.bounds.width)
+    d.writeInt(g.bounds.height)
+    d.writeInt(g.fixed_gates.length)
+    g.fixed_gates.foreach(writeGate(_, d))
+    d.writeInt(g.moveable_gates.length)
+    g.moveable_gates.foreach(writeGate(_, d))
+  }
+
+  private def writeGate(g: Gate, d: DataOutputStream) {
+    val (kind, attributes) = g match {
+      case x: Source => (SourceType, packed(x.direction, x.color))
+      case x: Conduit => (ConduitType, packed(x.direction, Black))
+      case x: Mirror => (MirrorType, packed(x.direction, Black))
+      case x: Prism => (PrismType, packed(x.direction, Black))
+      case x: PartialMirror => (PartialMirrorType, packed(x.direction, Black))
+      case x: CrossMirror => (CrossMirrorType, packed(x.direction, Black))
+      case x: Detector => (DetectorType, packed(North, x.wavelength))
+      case x: Blocker => (BlockerType, 0)
+      case x: WormHole => (WormHoleType, 0)
+      case x: SilveredSurface => throw new IllegalArgumentException("No binary form for " + x)
+    }
+    d.writeByte(kind)
+    d.writeShort(g.position.x)
+    d.writeShort(g.position.y)
+    d.writeByte(attributes)
+    g match {
+      case w: WormHole =>
+        d.writeShort(w.other.x)
+        d.writeShort(w.other.y)
+      case _ =>
+    }
+  }
+
+  private def packed(direction: Direction, color: LineColor): Int = {
+    direction.code | (color.rgb << 3)
+  }
+
+  private def writeString(s: String, d: DataOutputStream) {
+    val bytes = s.getBytes(UTF8)
+    d.writeInt(bytes.length)
+    d.write(bytes)
+  }
+
+  // reading
+
+  def readLevel(resource: Resource): LevelTemplate = readLevel(bytes(resource))
+
+  def readLevel(b: ByteBuffer): LevelTemplate = {
+    header(b, LevelMagic)
+    readLevelBody(b)
+  }
+
+  def readPack(resource: Resource): GamePack = {
+    val p = new BinaryPack(bytes(resource))
+    val g = new GamePack(p.unlockedLevels, p.entries, Some(p))
+    g.traceLimits = p.traceLimits
+    g
+  }
+
+  /** The bytes of the resource; files are mapped rather than read. */
+  private def bytes(resource: Resource): ByteBuffer = {
+    if (resource.isFile) {
+      map(resource.asFile)
+    } else {
+      val in = resource.openStream()
+      try {
+        ByteBuffer.wrap(readAll(in))
+      } finally {
+        in.close()
+      }
+    }
+  }
+
+  private def map(f: File): MappedByteBuffer = {
+    val raf = new RandomAccessFile(f, "r")
+    try {
+      raf.getChannel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length)
+    } finally {
+      raf.close() // the mapping remains valid
+    }
+  }
+
+  private def readAll(in: InputStream): Array[Byte] = {
+    val out = new ByteArrayOutputStream
+    val buf = new Array[Byte](8192)
+    var n = in.read(buf)
+    while (n >= 0) {
+      out.write(buf, 0, n)
+      n = in.read(buf)
+    }
+    out.toByteArray
+  }
+
+  private def header(b: ByteBuffer, magic: Int) {
+    if (b.getInt != magic) throw new IllegalArgumentException("Not a binary HoM file")
+    val v = b.getShort
+    if (v != Version) throw new IllegalArgumentException("Unsupported binary HoM version " + v)
+  }
+
+  private[hom] def readLevelBody(b: ByteBuffer): LevelTemplate = {
+    val description = readString(b)
+    val bounds = Bound(b.getInt, b.getInt, b.getInt, b.getInt)
+    val fixed_gates = readGates(b, false)
+    val moveable_gates = readGates(b, true)
+    new LevelTemplate(description, bounds, fixed_gates, moveable_gates)
+  }
+
+  private def readGates(b: ByteBuffer, moveable: Boolean): List[Gate] = {
+    val n = b.getInt
+    val gates = new ListBuffer[Gate]
+    for (i <- 0 until n) {
+      val kind = b.get
+      val p = Point(b.getShort, b.getShort)
+      val attributes = b.get
+      val d = Directions.fromCode(attributes)
+      def c = LineColors.withRGB(attributes >> 3)
+      gates += (kind match {
+        case SourceType => if (moveable) new MoveableSource(p, d, c) else new Source(p, d, c)
+        case ConduitType => if (moveable) new MoveableConduit(p, d) else new Conduit(p, d)
+        case MirrorType => if (moveable) new MoveableMirror(p, d) else new Mirror(p, d)
+        case PrismType => if (moveable) new MoveablePrism(p, d) else new Prism(p, d)
+        case PartialMirrorType => if (moveable) new MoveablePartialMirror(p, d) else new PartialMirror(p, d)
+        case CrossMirrorType => if (moveable) new MoveableCrossMirror(p, d) else new CrossMirror(p, d)
+        case DetectorType => if (moveable) new MoveableDetector(p, c) else new Detector(p, c)
+        case BlockerType => if (moveable) new MoveableBlocker(p) else new Blocker(p)
+        case WormHoleType =>
+          val other = Point(b.getShort, b.getShort)
+          if (moveable) new MoveableWormHole(p, other) else new FixedWormHole(p, other)
+        case x => throw new IllegalArgumentException("Unknown gate type " + x)
+      })
+    }
+    gates.toList
+  }
+
+  private def readString(b: ByteBuffer): String = {
+    val bytes = new Array[Byte](b.getInt)
+    b.get(bytes)
+    new String(bytes, UTF8)
+  }
+
+  /**
+   * The index of a binary pack. Level records are decoded on demand from the shared buffer.
+   */
+  class BinaryPack(buffer: ByteBuffer) {
+    private val (unlocked, limits, index, dataStart) = {
+      val b = buffer.duplicate
+      header(b, PackMagic)
+      val unlocked = (0 until b.getInt).map(i => b.getInt).toSet
+      val set = b.get
+      val limits = if ((set & LimitsSet) == 0) None else Some(TraceLimits(
+        if ((set & RaysSet) != 0) Some(b.getInt) else None,
+        if ((set & SegmentsSet) != 0) Some(b.getInt) else None,
+        if ((set & MillisSet) != 0) Some(b.getLong) else None))
+      val index = (0 until b.getInt).map { i =>
+        val id = b.getInt
+        val file = readString(b)
+        val unlock = (0 until b.getInt).map(j => b.getInt).toList
+        val offset = b.getInt
+        val length = b.getInt
+        (new PackEntry(id, file, unlock), offset, length)
+      }
+      (unlocked, limits, index, b.position)
+    }
+
+    // entry, offset and length of each level record, by level id; the first entry for each level, as in GamePack
+    private val byId: Map[Int, (PackEntry, Int, Int)] = index.reverse.map(x => (x._1.id, x)).toMap
+
+    def unlockedLevels: Set[Int] = unlocked
+
+    /** The limits on a trace set by the pack, if it sets any. */
+    def traceLimits: Option[TraceLimits] = limits
+
+    def entries: List[PackEntry] = index.map(_._1).toList
+
+    /** Decode the template for level n. */
+    def template(n: Int): LevelTemplate = {
+      val (e, offset, length) = byId(n)
+      val b = buffer.duplicate
+      b.position(dataStart + offset)
+      b.limit(dataStart + offset + length)
+      readLevelBody(b.slice)
+    }
+  }
+}
+
+/**
+ * Converts between XML and binary game files.
+ * Usage: HomConvert input output, where the extensions of the files give the formats,
+ * e.g. HomConvert rowhouse.homp rowhouse.hompb.
+ * Converting a binary pack to XML writes the level files next to the pack file.
+ */
+object HomConvert {
+  import Resource.{LevelExt, PackExt, BinaryLevelExt, BinaryPackExt}
+
+  def main(args: Array[String]) {
+    if (args.length != 2) {
+      Console.err.println("Usage: HomConvert input output")
+      sys.exit(1)
+    }
+    convert(new File(args(0)), new File(args(1)))
+  }
+
+  def convert(in: File, out: File) {
+    val r = Resource(in)
+    (r.extension, Resource.extensionOf(out.getName)) match {
+      case (LevelExt, BinaryLevelExt) | (BinaryLevelExt, BinaryLevelExt) => BinaryFormat.writeLevel(GameLevel(r, 0), out)
+      case (BinaryLevelExt, LevelExt) | (LevelExt, LevelExt) => writeXML(out)(_.level(GameLevel(r, 0)))
+      case (PackExt, BinaryPackExt) | (BinaryPackExt, BinaryPackExt) => BinaryFormat.writePack(GamePack(in), out)
+      case (BinaryPackExt, PackExt) | (PackExt, PackExt) =>
+        val p = GamePack(in)
+        val dir = out.getAbsoluteFile.getParentFile
+        for (e <- p.entries) {
+          writeXML(new File(dir, e.file))(_.level(p.levelTemplate(e.id).instantiate(e.id)))
+        }
+        writeXML(out)(_.pack(p))
+      case (x, y) => throw new IllegalArgumentException("Cannot convert " + x + " to " + y)
+    }
+  }
+
+  private def writeXML(f: File)(g: HomWriter => Unit) {
+    val w = new java.io.BufferedWriter(new java.io.OutputStreamWriter(new FileOutputStream(f), "UTF-8"))
+    try {
+      g(new HomWriter(w))
+    } finally {
+      w.close()
+    }
+  }
+}
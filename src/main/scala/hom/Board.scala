@@ -0,0 +1,220 @@
+package hom
+
+import Directions._
+
+object Board {
+  // flags per gate
+  private val IsMoveable: Byte = 1
+  private val IsTurnable: Byte = 2
+  private val IsOriented: Byte = 4
+
+  private val Empty = -1
+  private val Unoriented: Byte = -1
+
+  private def flagsOf(g: Gate): Byte = {
+    var f = 0
+    if (g.isInstanceOf[Moveable]) f |= IsMoveable
+    if (g.isInstanceOf[Turnable]) f |= IsTurnable
+    if (g.isInstanceOf[Oriented]) f |= IsOriented
+    f.toByte
+  }
+
+  private def directionOf(g: Gate): Byte = g match {
+    case o: Oriented => o.direction.code.toByte
+    case _ => Unoriented
+  }
+
+  // a gate's position and direction in one int: x and y in 12 signed bits each, then the direction byte
+  private val Reach = 2048
+  private def packs(p: Point) = p.x >= -Reach && p.x < Reach && p.y >= -Reach && p.y < Reach
+  private def pack(p: Point, d: Byte): Int = ((p.x & 0xfff) << 20) | ((p.y & 0xfff) << 8) | (d & 0xff)
+  private def x(v: Int) = v >> 20
+  private def y(v: Int) = (v << 12) >> 20
+  private def d(v: Int) = v.toByte
+}
+
+/**
+ * The positions and directions of the moveable gates of a board at one moment.
+ * Versions are immutable: each move or turn makes a new version that shares all but
+ * one path of its hash trie with the one before, so keeping many of them costs little.
+ */
+final class BoardVersion private[hom] (private[hom] val gates: scala.collection.immutable.HashMap[Int, Int]) {
+  private[hom] def updated(id: Int, state: Int) = new BoardVersion(gates.updated(id, state))
+}
+
+/**
+ * The gates of a level, indexed by cell.
+ * Gates are numbered from 0, fixed gates first, in the order given.
+ * Tables from cell to gate and from gate to its kind, cell and direction make
+ * finding, moving and turning a gate take constant time.
+ * The gates themselves are kept in step, since tracing and drawing use them;
+ * a gate moved or turned other than through its board leaves the board stale.
+ *
+ * The cells cover the bounds and a margin of one all round, where sources and detectors may sit.
+ * Versions keep each coordinate in 12 signed bits, so the cells must lie within 2048 of the origin.
+ */
+final class Board private (
+    val bounds: Bound,
+    private val gates: Array[Gate],
+    val fixedCount: Int,
+    private val flags: Array[Byte],
+    private val twins: Array[Int],
+    private val cells: Array[Int],
+    private val at: Array[Int],
+    private val directions: Array[Byte]) {
+
+  import Board._
+
+  private def left = bounds.x - 1
+  private def top = bounds.y - 1
+  private def columns = bounds.width + 2
+  private def rows = bounds.height + 2
+
+  /** A board of the given gates, which keep their positions. Wormholes should already be paired. */
+  def this(bounds: Bound, fixed: Seq[Gate], moveable: Seq[Gate]) = {
+    this(bounds, (fixed ++ moveable).toArray, fixed.length,
+      new Array[Byte](fixed.length + moveable.length), new Array[Int](fixed.length + moveable.length),
+      new Array[Int]((bounds.width + 2).max(0) * (bounds.height + 2).max(0)),
+      new Array[Int](fixed.length + moveable.length), new Array[Byte](fixed.length + moveable.length))
+    require(packs(Point(left, top)) && packs(Point(left + columns - 1, top + rows - 1)), "bounds too far out for a board: " + bounds)
+    for (g <- moveable) require(packs(g.position), "gate too far out for a board: " + g)
+    java.util.Arrays.fill(this.cells, Empty)
+    var v = scala.collection.immutable.HashMap.empty[Int, Int]
+    val ids = new java.util.IdentityHashMap[Gate, Int]
+    for (i <- 0 until size) ids.put(this.gates(i), i)
+    for (i <- 0 until size) {
+      val g = this.gates(i)
+      this.flags(i) = flagsOf(g)
+      this.directions(i) = directionOf(g)
+      this.twins(i) = g match {
+        case w: WormHole if w.twin != null && ids.containsKey(w.twin) => ids.get(w.twin)
+        case _ => Empty
+      }
+      val c = cellOf(g.position)
+      this.at(i) = c
+      // the first gate in a cell wins; a level with two is broken anyway
+      if (c != Empty && this.cells(c) == Empty) this.cells(c) = i
+      if (i >= fixedCount) v = v.updated(i, pack(g.position, this.directions(i)))
+    }
+    this.current = new BoardVersion(v)
+  }
+
+  private var current: BoardVersion = _
+
+  /** The moveable gates as they are now. */
+  def version: BoardVersion = current
+
+  /** Put every moveable gate back as it was in version v, which must be a version of this board or a copy of it. */
+  def restore(v: BoardVersion) {
+    require(v.gates.size == size - fixedCount, "not a version of this board")
+    for (id <- fixedCount until size) {
+      val want = v.gates(id)
+      if (want != current.gates(id)) {
+        place(id, Point(x(want), y(want)), if (d(want) == Unoriented) None else Some(Directions.fromCode(d(want))))
+      }
+    }
+    // share the trie of the version restored
+    current = v
+  }
+
+  def size: Int = gates.length
+
+  def gate(id: Int): Gate = gates(id)
+
+  def isMoveable(id: Int): Boolean = (flags(id) & IsMoveable) != 0
+
+  def isTurnable(id: Int): Boolean = (flags(id) & IsTurnable) != 0
+
+  def position(id: Int): Point = gates(id).position
+
+  /** The direction of gate id, if it has one. */
+  def direction(id: Int): Option[Direction] =
+    if (directions(id) == Unoriented) None else Some(Directions.fromCode(directions(id)))
+
+  /** The gate in cell p, or -1 if there is none. */
+  def idAt(p: Point): Int = {
+    val c = cellOf(p)
+    if (c != Empty) cells(c)
+    else {
+      // off the grid: only a gate that was put there by hand
+      var i = 0
+      while (i < size && gates(i).position != p) i += 1
+      if (i < size) i else Empty
+    }
+  }
+
+  def occupied(p: Point): Boolean = idAt(p) != Empty
+
+  /** Move gate id to a free cell in bounds; false if it is fixed or cannot go there. */
+  def move(id: Int, to: Point): Boolean = {
+    if (!isMoveable(id) || !bounds.contains(to) || occupied(to)) false
+    else {
+      put(id, to)
+      remember(id)
+      true
+    }
+  }
+
+  /** Turn gate id by 45 degrees; false if it does not turn. */
+  def turn(id: Int, clockwise: Boolean): Boolean = {
+    if (!isMoveable(id) || !isTurnable(id)) false
+    else {
+      val t = gates(id).asInstanceOf[Gate with Oriented with Turnable]
+      if (clockwise) t.turnCW else t.turnCCW
+      directions(id) = t.direction.code.toByte
+      remember(id)
+      true
+    }
+  }
+
+  /**
+   * Put gate id in cell p, facing d if it is oriented, whether or not the cell is free.
+   * Used to lay out several gates at once; the board is consistent again once no two share a cell.
+   */
+  def place(id: Int, p: Point, d: Option[Direction]) {
+    put(id, p)
+    (gates(id), d) match {
+      case (o: Oriented, Some(x)) =>
+        o.direction = x
+        directions(id) = x.code.toByte
+      case _ =>
+    }
+    remember(id)
+  }
+
+  private def put(id: Int, p: Point) {
+    val from = at(id)
+    if (from != Empty && cells(from) == id) cells(from) = Empty
+    gates(id).position = p
+    val c = cellOf(p)
+    at(id) = c
+    if (c != Empty) cells(c) = id
+  }
+
+  private def remember(id: Int) {
+    current = current.updated(id, pack(gates(id).position, directions(id)))
+  }
+
+  /**
+   * A board like this one whose moveable gates can be moved and turned without touching this one.
+   * Fixed gates are shared, except wormholes, which are copied so that copies keep their twins.
+   */
+  def copy: Board = {
+    val gs = new Array[Gate](size)
+    for (i <- 0 until size) {
+      val g = gates(i)
+      gs(i) = if (i >= fixedCount || g.isInstanceOf[WormHole]) Gate.copy(g) else g
+    }
+    for (i <- 0 until size if twins(i) != Empty) gs(i).asInstanceOf[WormHole].twin = gs(twins(i)).asInstanceOf[WormHole]
+    val b = new Board(bounds, gs, fixedCount, flags, twins, cells.clone, at.clone, directions.clone)
+    b.current = this.current
+    b
+  }
+
+  /** The cell index of p, or -1 if it is off the grid. */
+  private def cellOf(p: Point): Int = {
+    val x = p.x - left
+    val y = p.y - top
+    if (x < 0 || y < 0 || x >= columns || y >= rows) Empty else y * columns + x
+  }
+}
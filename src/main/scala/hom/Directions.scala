@@ -7,51 +7,52 @@ object Directions extends Enumeration {
   
   val North, Northeast, East, Southeast, South, Southwest, West, Northwest = Direction
   
-  // class param initial to Enumeration
-  private val minId = North.id
-  
   // factory function is a workaround, since no-arg ctor to Val breaks introspected naming in 2.8.0
   private def Direction = new Direction(nextId, null)
 
-  /** An element of Directions, with utility methods for simple transforms. */
+  /**
+   * An element of Directions, with utility methods for simple transforms.
+   * Each direction has a code from 0 (North) clockwise to 7 (Northwest), which indexes the tables below;
+   * turning a direction is arithmetic on its code, modulo 8.
+   */
   class Direction protected[Directions] (i: Int, s: String) extends Val(i, s) {
-    def right45 = lookup(if (this.id + 1 >= maxId) minId else this.id + 1)
-    def left45 = lookup(if (this.id - 1 < minId) maxId - 1 else this.id - 1)
-    def right90 = right45.right45
-    def left90 = left45.left45
-    def right135 = right45.right90
-    def left135 = left45.left90
-    //def reverse = right90.right90
-    // a bit of premature optimization, as an exercise
-    def reverse = lookup(bump(this.id, 4))
-
-    def angle = (this.id - minId) * 45
-    def angle(other: Direction): Int = mod(angle - other.angle, 360)
-    
-    // Enumeration.apply is final and not type-specific to Direction
-    private def lookup(i: Int): Direction = Directions(i).asInstanceOf[Direction]
-
-    private def mod(x: Int, n: Int) = if (x >= 0) x % n else (x + n)
-    private def bump: Int = bump(this.id)
-    private def bump(v: Int): Int = if (v + 1 >= maxId) minId else v + 1
-    private def bump(v: Int, n: Int): Int = {
-      require(n >= 0)
-      var i = n
-      var result = v
-      while (i > 0) {
-        result = bump(result)
-        i = i - 1
-      }
-      return result
-    }
+    // North is the first value, so its id is 0
+    val code: Int = i
+    def right45 = byCode((code + 1) & 7)
+    def left45 = byCode((code + 7) & 7)
+    def right90 = byCode((code + 2) & 7)
+    def left90 = byCode((code + 6) & 7)
+    def right135 = byCode((code + 3) & 7)
+    def left135 = byCode((code + 5) & 7)
+    def reverse = byCode((code + 4) & 7)
+
+    def angle = code * 45
+    /** The clockwise angle from other to this, from 0 to 315. */
+    def angle(other: Direction): Int = ((code - other.code) & 7) * 45
+
+    /** The column step of one cell in this direction. */
+    def dx: Int = Directions.dx(code)
+    /** The row step of one cell in this direction, down being positive. */
+    def dy: Int = Directions.dy(code)
   }
 
+  private val byCode: Array[Direction] = Array(North, Northeast, East, Southeast, South, Southwest, West, Northwest)
+
+  // steps by code
+  private val dx: Array[Int] = Array(0, 1, 1, 1, 0, -1, -1, -1)
+  private val dy: Array[Int] = Array(-1, -1, 0, 1, 1, 1, 0, -1)
+
+  /** The direction with the given code, modulo 8. */
+  def fromCode(code: Int): Direction = byCode(code & 7)
+
+  private lazy val byName: Map[String, Direction] = values.toList.map(d => (d.toString, d.asInstanceOf[Direction])).toMap
+
   /**
    * Like withName, but throws a NoSuchElementException with a meaningful message.
    */
   def forName(n: String): Direction = {
-      values.find(_.toString == n) match {
-        case Some(x) => x.asInstanceOf[Direction]
+      byName.get(n) match {
+        case Some(x) => x
         case None => throw new java.util.NoSuchElementException(n)
       }
   }
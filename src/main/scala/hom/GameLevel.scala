@@ -10,79 +10,62 @@ import XMLable._
 
 object GameLevel {
   def apply(resource: Resource, n: Int): GameLevel = {
-    require(resource != null)
-    fromXML(resource.loadXML(), n)
-  }
-
-  def fromXML(topElem: Elem, n: Int): GameLevel = {
-
-    def parseGates(node: Node, typeName: String) = (node \\ typeName)(0).descendant.map(_ match {
-      case s @ <Source/> => { val u: UnXMLable[Source] = s; u.fromXML }
-      case s @ <Conduit/> => { val u: UnXMLable[Conduit] = s; u.fromXML }
-      case s @ <Mirror/> => { val u: UnXMLable[Mirror] = s; u.fromXML }
-      case s @ <Prism/> => { val u: UnXMLable[Prism] = s; u.fromXML }
-      case s @ <PartialMirror/> => { val u: UnXMLable[PartialMirror] = s; u.fromXML }
-      case s @ <CrossMirror/> => { val u: UnXMLable[CrossMirror] = s; u.fromXML }
-      case s @ <Detector/> => { val u: UnXMLable[Detector] = s; u.fromXML }
-      case s @ <Blocker/> => { val u: UnXMLable[Blocker] = s; u.fromXML }
-      case s @ <WormHole/> => { val u: UnXMLable[FixedWormHole] = s; u.fromXML }
-    })
-
-    def parseMoveableGates(node: Node, typeName: String) = (node \\ typeName)(0).descendant.map(_ match {
-      case s @ <Source/> => { val u: UnXMLable[MoveableSource] = s; u.fromXML }
-      case s @ <Conduit/> => { val u: UnXMLable[MoveableConduit] = s; u.fromXML }
-      case s @ <Mirror/> => { val u: UnXMLable[MoveableMirror] = s; u.fromXML }
-      case s @ <Prism/> => { val u: UnXMLable[MoveablePrism] = s; u.fromXML }
-      case s @ <PartialMirror/> => { val u: UnXMLable[MoveablePartialMirror] = s; u.fromXML }
-      case s @ <CrossMirror/> => { val u: UnXMLable[MoveableCrossMirror] = s; u.fromXML }
-      case s @ <Detector/> => { val u: UnXMLable[MoveableDetector] = s; u.fromXML }
-      case s @ <Blocker/> => { val u: UnXMLable[MoveableBlocker] = s; u.fromXML }
-      case s @ <WormHole/> => { val u: UnXMLable[MoveableWormHole] = s; u.fromXML }
-    })
-
-    def parseBound(node: Node): Bound = {
-      val myBoundsNode = (node \\ "bounds")(0)
-      val u: UnXMLable[Bound] = myBoundsNode
-      u.fromXML
-    }
-
-    val trimTop = scala.xml.Utility.trim(topElem)
-    val bounds = parseBound((trimTop \\ "bounds")(0))
+    LevelTemplate(resource).instantiate(n)
+  }
 
-    val fixed_gates = parseGates(trimTop, "fixedGates")
-    val moveable_gates = parseMoveableGates(trimTop, "moveableGates")
+  def fromXML(topElem: Elem, n: Int): GameLevel = LevelTemplate.fromXML(topElem).instantiate(n)
 
-    // wormholes don't know their twins yet; for fun, handle the case of one is moveable but the other is fixed
-    for (one <- fixed_gates if (one.isInstanceOf[WormHole] && one.asInstanceOf[WormHole].twin == null)) {
-      val cur = one.asInstanceOf[WormHole]
-      // look among other fixed gates (self-test should fail)
-      for (two <- fixed_gates if (two.isInstanceOf[WormHole] && two.asInstanceOf[WormHole].position == cur.other)) {
-        val other = two.asInstanceOf[WormHole]
-        cur.twin = other
-        other.twin = cur
-      }
-      // look among moveable gates
-      if (cur.twin == null) {
-        for (two <- moveable_gates if (two.isInstanceOf[WormHole] && two.asInstanceOf[WormHole].position == cur.other)) {
-          val other = two.asInstanceOf[WormHole]
+  /**
+   * Wormholes don't know their twins when they are created, so pair them up by position.
+   * Each wormhole is paired with the wormhole at its other end, found in a map of wormholes by position,
+   * so pairing takes one pass. Where two wormholes share a cell, the fixed or earlier one is found.
+   */
+  def pairWormHoles(fixed_gates: List[Gate], moveable_gates: List[Gate]) {
+    val all = fixed_gates ::: moveable_gates
+    val at = wormHolesByPosition(all)
+    for (g <- all) g match {
+      case cur: WormHole if cur.twin == null =>
+        val other = at.get(cur.other)
+        if (other != null && (other ne cur)) {
           cur.twin = other
           other.twin = cur
         }
-      }
+      case _ =>
     }
-    // any remaining are pairs which are both moveable
-    for (one <- moveable_gates if (one.isInstanceOf[WormHole] && one.asInstanceOf[WormHole].twin == null)) {
-      val cur = one.asInstanceOf[WormHole]
-      // look among other moveable gates (self-test should fail)
-      for (two <- moveable_gates if (two.isInstanceOf[WormHole] && two.asInstanceOf[WormHole].position == cur.other)) {
-        val other = two.asInstanceOf[WormHole]
-        cur.twin = other
-        other.twin = cur
+  }
+
+  /**
+   * What is wrong with the wormholes among these gates, if anything: wormholes that share a cell,
+   * lead to themselves, lead to a cell without a wormhole, lead to a wormhole another one leads to,
+   * or lead to a wormhole that does not lead back.
+   */
+  def wormHoleProblems(fixed_gates: List[Gate], moveable_gates: List[Gate]): List[String] = {
+    def at(p: Point) = "(" + p.x + ", " + p.y + ")"
+    val all = (fixed_gates ::: moveable_gates).collect { case w: WormHole => w }
+    val byPosition = wormHolesByPosition(all)
+    val leadingTo = new java.util.HashMap[Point, WormHole]
+    val problems = new scala.collection.mutable.ListBuffer[String]
+    for (w <- all) {
+      if (byPosition.get(w.position) ne w) problems += "Two wormholes at " + at(w.position)
+      if (w.other == w.position) problems += "Wormhole at " + at(w.position) + " leads to itself"
+      else if (!byPosition.containsKey(w.other)) problems += "Wormhole at " + at(w.position) + " leads to " + at(w.other) + ", where there is no wormhole"
+      else {
+        val before = leadingTo.put(w.other, w)
+        if (before != null) problems += "Wormholes at " + at(before.position) + " and " + at(w.position) + " both lead to " + at(w.other)
+        else if (byPosition.get(w.other).other != w.position) problems += "Wormhole at " + at(w.position) + " leads to " + at(w.other) + ", which leads elsewhere"
       }
     }
+    problems.toList
+  }
 
-    val description = (trimTop \\ "description")(0).child.foldLeft("")(_ + _.toString)
-    return new GameLevel(n, description, bounds, fixed_gates, moveable_gates)
+  // the first wormhole in each cell
+  private def wormHolesByPosition(gates: List[Gate]): java.util.HashMap[Point, WormHole] = {
+    val m = new java.util.HashMap[Point, WormHole]
+    for (g <- gates) g match {
+      case w: WormHole if !m.containsKey(w.position) => m.put(w.position, w)
+      case _ =>
+    }
+    m
   }
 
   def toXML(g: GameLevel): Elem = {
@@ -99,10 +82,17 @@ object GameLevel {
  * Models a game level as a grid with gate objects.
  * Moveable gates can be moved and rotated.
  * Current board state is generated by trace, which calculates light paths as line segments and current gate states.
+ * The level is a view of its Board, which finds, moves and turns gates in constant time.
  */
-class GameLevel(val level: Int, val description: String, val bounds: Bound, val fixed_gates: List[Gate], var moveable_gates: List[Gate]) {
+class GameLevel private (val level: Int, val description: String, val bounds: Bound, private val board: Board) {
+
+  def this(level: Int, description: String, bounds: Bound, fixed_gates: List[Gate], moveable_gates: List[Gate]) =
+    this(level, description, bounds, new Board(bounds, fixed_gates, moveable_gates))
 
-  def gates = fixed_gates ::: moveable_gates
+  // gates are moved and turned in place, so these never change
+  val fixed_gates: List[Gate] = (0 until board.fixedCount).map(board.gate).toList
+  val moveable_gates: List[Gate] = (board.fixedCount until board.size).map(board.gate).toList
+  val gates: List[Gate] = fixed_gates ::: moveable_gates
 
   /**
    * A chance to free resources on shutdown.
@@ -111,22 +101,87 @@ class GameLevel(val level: Int, val description: String, val bounds: Bound, val
     //empty
   }
 
-  def occupied(p: Point) = {
-    this.gates.find(g => g.position == p).isDefined
+  def occupied(p: Point) = board.occupied(p)
+
+  /** The gate at p, if any. */
+  def gateAt(p: Point): Option[Gate] = {
+    val id = board.idAt(p)
+    if (id < 0) None else Some(board.gate(id))
   }
 
   def turnCCW(p: Point): Boolean = {
-    var result: Boolean = false
-    this.moveable_gates = this.moveable_gates.map(g => if (g.position == p) { result = true; g.asInstanceOf[Turnable].turnCCW } else g)
-    return result
+    val id = board.idAt(p)
+    id >= 0 && board.turn(id, false)
   }
 
   def turnCW(p: Point): Boolean = {
-    var result: Boolean = false
-    this.moveable_gates = this.moveable_gates.map(g => if (g.position == p) { result = true; g.asInstanceOf[Turnable].turnCW } else g)
-    return result
+    val id = board.idAt(p)
+    id >= 0 && board.turn(id, true)
   }
 
+  /**
+   * Put the i-th moveable gate at p, facing d if it is oriented, without the checks of a move.
+   * Used to lay out a whole solution; once every gate is placed, no two may share a cell.
+   */
+  def place(i: Int, p: Point, d: Option[Direction]) {
+    board.place(board.fixedCount + i, p, d)
+  }
+
+  /** The moveable gates as they are now; versions share structure, so keeping them is cheap. */
+  def version: BoardVersion = board.version
+
+  /** Put the moveable gates back as they were in version v of this level or a copy of it. */
+  def restore(v: BoardVersion) {
+    board.restore(v)
+  }
+
+  /**
+   * Move and turn the moveable gates to where they are in other, an earlier version of this level, as far
+   * as this level allows. Gates are matched in order, and only if they are of the same kind; a gate whose
+   * old cell is out of bounds, holds a fixed gate, or is wanted by a gate that stays, stays where it is.
+   */
+  def keepPositions(other: GameLevel): GameLevel = {
+    val mine = this.moveable_gates.toArray
+    val theirs = other.moveable_gates.toArray
+    def free(p: Point) = {
+      val id = board.idAt(p)
+      id < 0 || id >= board.fixedCount
+    }
+    var going = (0 until mine.length.min(theirs.length)).filter { i =>
+      val p = theirs(i).position
+      mine(i).getClass == theirs(i).getClass && bounds.contains(p) && free(p)
+    }.toSet
+    // each gate left behind may keep another from going back to its cell
+    var settled = false
+    while (!settled) {
+      val staying = (0 until mine.length).filterNot(going).map(i => mine(i).position).toSet
+      val blocked = going.filter(i => staying.contains(theirs(i).position))
+      settled = blocked.isEmpty
+      going --= blocked
+    }
+    for (i <- going) {
+      val d = theirs(i) match {
+        case o: Oriented => Some(o.direction)
+        case _ => None
+      }
+      place(i, theirs(i).position, d)
+    }
+    this
+  }
+
+  /**
+   * A level like this one, whose gates can be moved and turned without touching this one.
+   * Fixed gates are shared; moveable gates and wormholes are copied, and copied wormholes keep their twins.
+   */
+  def copy: GameLevel = {
+    val c = new GameLevel(this.level, this.description, this.bounds, this.board.copy)
+    c.traceBudget = this.traceBudget
+    c
+  }
+
+  /** The limits on the work of a trace, usually those of the pack. */
+  var traceBudget: TraceBudget = TraceBudget.fromProperties
+
   def moveUp(p: Point) = moveTo(p, p.moveUp)
 
   def moveDown(p: Point) = moveTo(p, p.moveDown)
@@ -135,13 +190,10 @@ class GameLevel(val level: Int, val description: String, val bounds: Bound, val
 
   def moveRight(p: Point) = moveTo(p, p.moveRight)
 
+  /** Move the moveable gate at from to target, if target is a free cell in bounds. */
   def moveTo(from: Point, target: Point): Boolean = {
-    if (this.bounds.contains(target) && !occupied(target)) {
-      this.moveable_gates = moveable_gates.map(g => if (g.position == from) g.asInstanceOf[Moveable].moveTo(target) else g)
-      true
-    } else {
-      false
-    }
+    val id = board.idAt(from)
+    id >= 0 && board.move(id, target)
   }
 
   private def sourceRays: List[Ray] = this.gates.flatMap(g =>
@@ -151,23 +203,27 @@ class GameLevel(val level: Int, val description: String, val bounds: Bound, val
     }
   )
 
-  /** Derive the light rays and gate states (i.e., whether Detectors are detecting) from the current board model. */
+  /**
+   * Derive the light rays and gate states (i.e., whether Detectors are detecting) from the current board model.
+   * If the trace runs out of budget, the state is as far as it got, and marked truncated.
+   */
   def trace: GameState = {
-    val (segments, revisedGates) = shootRayList(sourceRays, this.gates, Nil)
+    val work = this.traceBudget.start
+    val (segments, revisedGates) = shootRayList(sourceRays, this.gates, Nil, work)
     //println(segments.length + " Trace segments " + segments)
-    val status = this.status(revisedGates)
-    return new GameState(segments, revisedGates, status)
+    val status = this.status(revisedGates, work.exhausted)
+    return new GameState(segments, revisedGates, status, work.exhausted)
   }
 
-  private def status(g: List[Gate]): StatusUpdate = {
+  private def status(g: List[Gate], truncated: Boolean): StatusUpdate = {
     val detectors = g.filter (_.isInstanceOf[Detector]).map(_.asInstanceOf[Detector])
     val numOn = detectors.foldLeft(0)((sum, d) => if (d.isOn) sum + 1 else sum)
     val totalDetectors = detectors.length
-    return new StatusUpdate(this.description, numOn, totalDetectors)
+    return new StatusUpdate(this.description, numOn, totalDetectors, truncated)
   }
 
   /** Shoots a ray, and gives a list of resulting line-segments */
-  private def shootRay(r: Ray, gateList: List[Gate], visitedGates: List[(Gate, Direction, LineColor)]): (List[Segment], List[Gate]) = {
+  private def shootRay(r: Ray, gateList: List[Gate], visitedGates: List[(Gate, Direction, LineColor)], work: TraceBudget.Work): (List[Segment], List[Gate]) = {
     var traceSegment : List[Segment] = Nil
     var traceGate : List[Gate] = gateList
 
@@ -185,7 +241,7 @@ class GameLevel(val level: Int, val description: String, val bounds: Bound, val
             //println(gate + " shoots " + rays + " and becomes " + newgate)
             traceGate = addUniqueGate(newgate, traceGate)
 
-            val returnList = shootRayList(rays, traceGate, (gate, r.direction, r.color) :: visitedGates)
+            val returnList = shootRayList(rays, traceGate, (gate, r.direction, r.color) :: visitedGates, work)
             traceSegment = returnList._1
             traceGate = returnList._2
           }
@@ -199,23 +255,69 @@ class GameLevel(val level: Int, val description: String, val bounds: Bound, val
       }
     }
     val returnGates = gateList.filterNot(x => traceGate.find(y => y.position == x.position).isDefined)
+    work.segment()
     (new Segment(r.start, prevPoint, r.color) :: traceSegment , traceGate ::: returnGates)
   }
 
-  private def shootRayList(rays: List[Ray], gateList: List[Gate], visitations: List[(Gate, Direction, LineColor)]) = {
+  private def shootRayList(rays: List[Ray], gateList: List[Gate], visitations: List[(Gate, Direction, LineColor)], work: TraceBudget.Work) = {
     var segments: List[Segment] = Nil
     var revisedGates: List[Gate] = gateList
 
-    rays.foreach(ray => {
-      val (resultSegments, resultGates) = shootRay(ray, revisedGates, visitations)
+    // the rays left once the budget runs out are not shot
+    work.enter()
+    for (ray <- rays if work.ray()) {
+      // a speculative trace may be abandoned part way
+      if (Thread.currentThread.isInterrupted) throw new java.util.concurrent.CancellationException("trace interrupted")
+      val (resultSegments, resultGates) = shootRay(ray, revisedGates, visitations, work)
       segments = resultSegments ::: segments
       revisedGates = resultGates
-    })
+    }
+    work.leave()
     (segments, revisedGates)
   }
 
   def toXML(): Elem = GameLevel.toXML(this)
 }
 
-class GameState(val segments: List[Segment], val gates: List[Gate], val status: StatusUpdate)
+/** A level that cannot be played, with a description of each thing wrong with it. */
+class BadLevelException(val problems: List[String]) extends IllegalArgumentException(
+  problems.take(3).mkString("; ") + (if (problems.length > 3) " (and " + (problems.length - 3) + " more)" else ""))
+
+/** The light on a board; if truncated, the trace ran out of budget, and this is as far as it got. */
+class GameState(val segments: List[Segment], val gates: List[Gate], val status: StatusUpdate, val truncated: Boolean = false)
 
+/**
+ * The states of a level for each orientation of the gate at one point.
+ * The board is the position and orientation of every moveable gate except that one, when the states were traced.
+ */
+class Rotations(val at: Point, val board: List[(Point, Option[Direction])], states: Map[Direction, GameState]) {
+  /**
+   * The state of level g, if only the gate at this point differs from the board traced.
+   * The states were traced on a copy of the level, so the gates are g's own, with the Detectors as traced.
+   */
+  def stateOf(g: GameLevel): Option[GameState] = {
+    val traced = if (Rotations.board(g, at) != board) None
+    else g.gateAt(at) match {
+      case Some(o: Oriented) => states.get(o.direction)
+      case _ => None
+    }
+    for (s <- traced) yield {
+      val detectors = s.gates.collect { case d: Detector => (d.position, d) }.toMap
+      val gates = g.gates.map {
+        case d: Detector => detectors.getOrElse(d.position, d)
+        case x => x
+      }
+      new GameState(s.segments, gates, s.status, s.truncated)
+    }
+  }
+}
+
+object Rotations {
+  def board(g: GameLevel, except: Point): List[(Point, Option[Direction])] = g.moveable_gates.map { m =>
+    val d = m match {
+      case o: Oriented if m.position != except => Some(o.direction)
+      case _ => None
+    }
+    (m.position, d)
+  }
+}
@@ -5,12 +5,37 @@ import scala.xml._
 
 object GamePack {
 
-  def apply(s: String): GamePack = fromXML(Resource(s))
+  def apply(s: String): GamePack = apply(Resource(s))
 
-  def apply(f: File): GamePack = fromXML(Resource(f))
+  def apply(f: File): GamePack = apply(Resource(f))
+
+  /** Load a pack, in XML or binary form according to its extension. */
+  def apply(r: Resource): GamePack = if (r.extension == Resource.BinaryPackExt) fromBinary(r) else fromXML(r)
+
+  /**
+   * The name of the binary snapshot of the pack with the given resource name, if the build put one on
+   * the classpath and it is no older than the pack; otherwise the name itself. Decoding the snapshot
+   * at startup saves parsing the pack and its first level as XML. -Dhom.snapshot=false turns it off.
+   */
+  def snapshotOf(name: String, loader: ClassLoader = getClass.getClassLoader): String = {
+    def modified(u: java.net.URL) = if (u.getProtocol == "file") new File(u.toURI).lastModified else 0L
+    val snapshot = name.stripSuffix(Resource.PackExt) + Resource.BinaryPackExt
+    val wanted = sys.props.get("hom.snapshot").forall(!_.equalsIgnoreCase("false"))
+    val found = if (wanted && name.endsWith(Resource.PackExt)) Option(loader.getResource(snapshot)) else None
+    found match {
+      case Some(s) if Option(loader.getResource(name)).forall(x => modified(x) <= modified(s)) => snapshot
+      case _ => name
+    }
+  }
 
   def fromXML(r: Resource): GamePack = {
-    val g = fromXML(r.loadXML)
+    val g = HomReader.readPack(r)
+    g.packResource = Some(r);
+    return g
+  }
+
+  def fromBinary(r: Resource): GamePack = {
+    val g = BinaryFormat.readPack(r)
     g.packResource = Some(r);
     return g
   }
@@ -18,7 +43,9 @@ object GamePack {
   def fromXML(pack: Elem): GamePack = {
     val unlockedLevels = (pack \\ "unlocked" \\ "ulevel").toList.map(x=>x.attribute("id").get.text.toInt).toSet
     val packEntries = (pack \ "level").toList.map(n => PackEntry.fromXML(n))
-    new GamePack(unlockedLevels, packEntries)
+    val g = new GamePack(unlockedLevels, packEntries)
+    g.traceLimits = (pack \ "traceBudget").headOption.map(b => TraceLimits.fromAttributes(a => b.attribute(a).map(_.text)))
+    g
   }
 
   def toXML(pack: GamePack): Elem = pack.toXML
@@ -30,18 +57,38 @@ object GamePack {
  * The game definition is a set of game level files
  * and the set of accessible or unlocked levels.
  */
-class GamePack(var unlockedLevels: Set[Int], private var packEntries: List[PackEntry]) {
+class GamePack(var unlockedLevels: Set[Int], private var packEntries: List[PackEntry], binary: Option[BinaryFormat.BinaryPack]) {
+
+  def this(unlockedLevels: Set[Int], packEntries: List[PackEntry]) = this(unlockedLevels, packEntries, None)
 
   private var packResource: Option[Resource] = None
+
+  /** The resource this pack was loaded from, if any. */
+  def resource: Option[Resource] = this.packResource
   
+  /** The limits on tracing set by the pack, if any, as the pack declares them. */
+  var traceLimits: Option[TraceLimits] = None
+
+  /** The limits on tracing a level of this pack: those the pack sets, and the system properties for the rest. */
+  def traceBudget: TraceBudget = this.traceLimits match {
+    case Some(l) => l.over(TraceBudget.fromProperties)
+    case None => TraceBudget.fromProperties
+  }
+
   /** The number of levels defined in this pack */
   val numLevels: Int = this.packEntries.length
 
   /** The maximum level number defined in this pack (may differ from numLevels). */
   val maxLevel: Int = this.packEntries.foldLeft(-1) { (m,p) => m.max(p.id) }
 
-  def packEntryForLevel(n: Int): PackEntry = this.packEntries.find(p => p.id == n).get
-  def isLevelDefined(n: Int): Boolean = this.packEntries.find(p => p.id == n).isDefined
+  /** The pack entries, in pack file order. */
+  def entries: List[PackEntry] = this.packEntries
+
+  // the first entry for each level
+  private val byId: Map[Int, PackEntry] = this.packEntries.reverse.map(e => (e.id, e)).toMap
+
+  def packEntryForLevel(n: Int): PackEntry = this.byId(n)
+  def isLevelDefined(n: Int): Boolean = this.byId.contains(n)
   
 
   def isUnlocked(n: Int): Boolean = this.unlockedLevels.contains(n)
@@ -75,6 +122,25 @@ class GamePack(var unlockedLevels: Set[Int], private var packEntries: List[PackE
   /** Result is resource for level N. Throws if no such level, or pack was not loaded from a resource. */
   def levelResource(n: Int): Resource = Resource(this.packResource.get, packEntryForLevel(n).file)
 
+  /**
+   * Result is the template for level N, from the cache if given.
+   * Levels of a binary pack are decoded from the pack itself rather than from level resources.
+   * Throws if no such level, or pack was not loaded from a resource.
+   */
+  def levelTemplate(n: Int, cache: Option[LevelCache] = None): LevelTemplate = this.binary match {
+    case Some(b) =>
+      val r = this.packResource.get
+      cache match {
+        case Some(c) => c.template(r.uri + "#" + n, r.lastModified)(b.template(n))
+        case None => b.template(n)
+      }
+    case None =>
+      cache match {
+        case Some(c) => c.template(levelResource(n))
+        case None => LevelTemplate(levelResource(n))
+      }
+  }
+
   /**
    * If pack was loaded from a directory, return the (optional) directory.
    */
@@ -85,9 +151,23 @@ class GamePack(var unlockedLevels: Set[Int], private var packEntries: List[PackE
     } else { None }
   }
 
+  /**
+   * The levels whose files are in the pack directory under one of the given names.
+   * Levels of a binary pack have no files of their own.
+   */
+  def levelsNamed(names: Set[String]): Set[Int] = (this.binary, packDir) match {
+    case (None, Some(d)) =>
+      this.packEntries.filter { e =>
+        val f = new File(d, e.file)
+        names.contains(f.getName) && f.getParentFile == d
+      }.map(_.id).toSet
+    case _ => Set.empty
+  }
+
   def toXML(): Elem = {
     <HoMPack>
       <unlocked> {unlockedLevels.toList.sortWith(_ < _).map(u => <ulevel id={u.toString}/>)} </unlocked>
+      { for (b <- this.traceLimits.toList) yield <traceBudget rays={b.rays.map(x => Text(x.toString))} segments={b.segments.map(x => Text(x.toString))} millis={b.millis.map(x => Text(x.toString))}/> }
       { for (p <- this.packEntries) yield { PackEntry.toXML(p) } }
     </HoMPack>
   }
@@ -35,6 +35,75 @@ trait Fixed {
   override def position_=(p: Point): Nothing = throw new UnsupportedOperationException
 }
 
+object Gate {
+  /**
+   * A new gate like g, at the same position and with the same orientation.
+   * A copied wormhole has no twin until it is paired again.
+   */
+  def copy(g: Gate): Gate = g match {
+    case x: FixedWormHole => new FixedWormHole(x.position, x.other)
+    case x: MoveableWormHole => new MoveableWormHole(x.position, x.other)
+    case x: WormHole => new WormHole(x.position, x.other)
+    case x: MoveableBlocker => new MoveableBlocker(x.position)
+    case x: Blocker => new Blocker(x.position)
+    case x: MoveableConduit => new MoveableConduit(x.position, x.direction)
+    case x: Conduit => new Conduit(x.position, x.direction)
+    case x: MoveableSource => new MoveableSource(x.position, x.direction, x.color)
+    case x: Source => new Source(x.position, x.direction, x.color)
+    case x: MoveableDetector => new MoveableDetector(x.position, x.wavelength)
+    case x: Detector => new Detector(x.position, x.wavelength, x.absorption)
+    case x: MoveablePrism => new MoveablePrism(x.position, x.direction)
+    case x: Prism => new Prism(x.position, x.direction)
+    case x: MoveableMirror => new MoveableMirror(x.position, x.direction)
+    case x: Mirror => new Mirror(x.position, x.direction)
+    case x: MoveablePartialMirror => new MoveablePartialMirror(x.position, x.direction)
+    case x: PartialMirror => new PartialMirror(x.position, x.direction)
+    case x: MoveableCrossMirror => new MoveableCrossMirror(x.position, x.direction)
+    case x: CrossMirror => new CrossMirror(x.position, x.direction)
+    case x: SilveredSurface => throw new IllegalArgumentException("Cannot copy " + x)
+  }
+
+  /**
+   * The gate a level file names, built from its attributes, or None if there is no such gate.
+   * Both the document and the streaming readers build their gates here, so they cannot disagree.
+   */
+  def fromAttributes(name: String, moveable: Boolean)(attribute: String => String): Option[Gate] = {
+    def num(a: String) = attribute(a).toInt
+    def p = Point(num("x"), num("y"))
+    def d = Directions.forName(attribute("direction"))
+    def c = LineColors.withNameIgnoreCase(attribute("color"))
+    def isNeeded(c: LineColor) = attribute(c.toString.toLowerCase) match {
+      case "required" => true
+      case "met" => throw new IllegalStateException(c + " requirement 'met' is not supported.")
+      case "unwanted" => false
+    }
+    def w = (Black /: List(Red, Green, Blue)) { (w, c) => if (isNeeded(c)) w + c else w }
+    def end(i: Int) = Point(num("x" + i), num("y" + i))
+    val g: PartialFunction[String, Gate] = if (moveable) {
+      case "Source" => new MoveableSource(p, d, c)
+      case "Conduit" => new MoveableConduit(p, d)
+      case "Mirror" => new MoveableMirror(p, d)
+      case "Prism" => new MoveablePrism(p, d)
+      case "PartialMirror" => new MoveablePartialMirror(p, d)
+      case "CrossMirror" => new MoveableCrossMirror(p, d)
+      case "Detector" => new MoveableDetector(p, w)
+      case "Blocker" => new MoveableBlocker(p)
+      case "WormHole" => new MoveableWormHole(end(1), end(2))
+    } else {
+      case "Source" => new Source(p, d, c)
+      case "Conduit" => new Conduit(p, d)
+      case "Mirror" => new Mirror(p, d)
+      case "Prism" => new Prism(p, d)
+      case "PartialMirror" => new PartialMirror(p, d)
+      case "CrossMirror" => new CrossMirror(p, d)
+      case "Detector" => new Detector(p, w)
+      case "Blocker" => new Blocker(p)
+      case "WormHole" => new FixedWormHole(end(1), end(2))
+    }
+    g.lift(name)
+  }
+}
+
 /**
  * A gate is the base class for all objects in the light box.
  * Gates act upon incident rays, and in turn may be acted upon by them.
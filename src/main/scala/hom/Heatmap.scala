@@ -0,0 +1,36 @@
+package hom
+
+/**
+ * How well a moveable gate would do in each cell it could be moved to:
+ * the number of detectors lit with the gate there, and nothing else changed.
+ * Each cell is scored on its own copy of the level, so cells may be scored in parallel.
+ */
+object Heatmap {
+
+  /** The cells the gate at p could be put in: its own, and every free cell in bounds, in row order. */
+  def cells(g: GameLevel, p: Point): List[Point] = {
+    val b = g.bounds
+    val all = for (y <- b.y until b.y + b.height; x <- b.x until b.x + b.width) yield Point(x, y)
+    all.filter(c => c == p || !g.occupied(c)).toList
+  }
+
+  /**
+   * The detectors lit with the gate at p moved to cell to, which must be free.
+   * If every orientation is wanted and the gate turns, the best of its eight orientations there.
+   * The level is not changed.
+   */
+  def score(g: GameLevel, p: Point, to: Point, everyOrientation: Boolean): Int = {
+    val c = g.copy
+    if (to != p && !c.moveTo(p, to)) return 0
+    val turns = c.gateAt(to) match {
+      case Some(t: Turnable) if everyOrientation => 8
+      case _ => 1
+    }
+    var best = 0
+    for (i <- 0 until turns) {
+      if (i > 0) c.turnCW(to)
+      best = best.max(c.trace.status.score)
+    }
+    best
+  }
+}
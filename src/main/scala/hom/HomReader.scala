@@ -0,0 +1,191 @@
+package hom
+
+import java.io.InputStream
+import javax.xml.stream.{XMLInputFactory, XMLStreamConstants, XMLStreamReader}
+
+import scala.collection.mutable.ListBuffer
+import scala.xml.{Elem, Node, Null, Text, TopScope, UnprefixedAttribute, Utility}
+
+/**
+ * Single pass readers for level (.hom) and pack (.homp) files.
+ * Gates are built directly from the StAX event stream, without building a document first.
+ * Gates come from Gate.fromAttributes, as in the scala.xml path of LevelTemplate.fromXML,
+ * so the result is the same as that path and GamePack.fromXML.
+ */
+object HomReader {
+
+  import XMLStreamConstants._
+
+  private val factory: XMLInputFactory = {
+    val f = XMLInputFactory.newInstance
+    f.setProperty(XMLInputFactory.IS_COALESCING, true)
+    f.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+    f
+  }
+
+  def readLevel(resource: Resource): LevelTemplate = withReader(resource)(readLevel)
+
+  def readPack(resource: Resource): GamePack = withReader(resource)(readPack)
+
+  def readLevel(in: InputStream): LevelTemplate = withReader(in)(readLevel)
+
+  def readPack(in: InputStream): GamePack = withReader(in)(readPack)
+
+  private def withReader[A](resource: Resource)(f: XMLStreamReader => A): A = {
+    val in = resource.openStream()
+    try {
+      withReader(in)(f)
+    } finally {
+      in.close()
+    }
+  }
+
+  private def withReader[A](in: InputStream)(f: XMLStreamReader => A): A = {
+    val r = factory.createXMLStreamReader(in)
+    try {
+      f(r)
+    } finally {
+      r.close()
+    }
+  }
+
+  private def readLevel(r: XMLStreamReader): LevelTemplate = {
+    var description: String = null
+    var bounds: Bound = null
+    var fixed_gates: List[Gate] = null
+    var moveable_gates: List[Gate] = null
+    while (r.hasNext) {
+      if (r.next() == START_ELEMENT) {
+        r.getLocalName match {
+          case "description" if description == null => description = readDescription(r)
+          case "bounds" if bounds == null => bounds = Bound(0, 0, num(r, "width"), num(r, "height"))
+          case "fixedGates" if fixed_gates == null => fixed_gates = readGates(r, false)
+          case "moveableGates" if moveable_gates == null => moveable_gates = readGates(r, true)
+          case _ =>
+        }
+      }
+    }
+    if (description == null) throw new NoSuchElementException("description")
+    if (bounds == null) throw new NoSuchElementException("bounds")
+    if (fixed_gates == null) throw new NoSuchElementException("fixedGates")
+    if (moveable_gates == null) throw new NoSuchElementException("moveableGates")
+    new LevelTemplate(description, bounds, fixed_gates, moveable_gates)
+  }
+
+  /** Gates are the elements anywhere under the current element. */
+  private def readGates(r: XMLStreamReader, moveable: Boolean): List[Gate] = {
+    val gates = new ListBuffer[Gate]
+    var depth = 1
+    while (depth > 0) {
+      r.next() match {
+        case START_ELEMENT =>
+          depth += 1
+          gates += gate(r, moveable)
+        case END_ELEMENT => depth -= 1
+        case _ =>
+      }
+    }
+    gates.toList
+  }
+
+  private def gate(r: XMLStreamReader, moveable: Boolean): Gate =
+    Gate.fromAttributes(r.getLocalName, moveable)(a => attr(r, a))
+      .getOrElse(throw new IllegalArgumentException("Unknown gate " + r.getLocalName + " at " + r.getLocation))
+
+  /**
+   * The description is markup, so its content is gathered as nodes and rendered exactly as
+   * the document path does: trimmed, then each child as a string.
+   */
+  private def readDescription(r: XMLStreamReader): String = {
+    val content = readContent(r)
+    val trimmed = Utility.trim(element("description", Null, content))
+    trimmed.child.foldLeft("")(_ + _.toString)
+  }
+
+  private val unprefixed = <e/>
+
+  // an unprefixed element in the top scope
+  private def element(label: String, attrs: scala.xml.MetaData, children: Seq[Node]): Elem =
+    unprefixed.copy(label = label, attributes = attrs, child = children)
+
+  // children of the current element, up to its end tag
+  private def readContent(r: XMLStreamReader): Seq[Node] = {
+    val nodes = new ListBuffer[Node]
+    var done = false
+    while (!done) {
+      r.next() match {
+        case START_ELEMENT =>
+          val label = r.getLocalName
+          var attrs: scala.xml.MetaData = Null
+          // prepended, so in reverse document order like the scala.xml parser
+          for (i <- 0 until r.getAttributeCount) {
+            attrs = new UnprefixedAttribute(r.getAttributeLocalName(i), r.getAttributeValue(i), attrs)
+          }
+          nodes += element(label, attrs, readContent(r))
+        case CHARACTERS | CDATA | SPACE => nodes += Text(r.getText)
+        case END_ELEMENT => done = true
+        case _ =>
+      }
+    }
+    nodes.toList
+  }
+
+  private def readPack(r: XMLStreamReader): GamePack = {
+    val unlocked = new ListBuffer[Int]
+    val entries = new ListBuffer[PackEntry]
+    var limits: Option[TraceLimits] = None
+    var depth = 0
+    var inUnlocked = 0
+    while (r.hasNext) {
+      r.next() match {
+        case START_ELEMENT =>
+          depth += 1
+          r.getLocalName match {
+            case "unlocked" => inUnlocked += 1
+            case "ulevel" if inUnlocked > 0 => unlocked += num(r, "id")
+            case "traceBudget" if depth == 2 =>
+              limits = Some(TraceLimits.fromAttributes(a => Option(r.getAttributeValue(null, a))))
+            case "level" if depth == 2 =>
+              entries += readPackEntry(r)
+              depth -= 1
+            case _ =>
+          }
+        case END_ELEMENT =>
+          depth -= 1
+          if (r.getLocalName == "unlocked") inUnlocked -= 1
+        case _ =>
+      }
+    }
+    val p = new GamePack(unlocked.toSet, entries.toList)
+    p.traceLimits = limits
+    p
+  }
+
+  private def readPackEntry(r: XMLStreamReader): PackEntry = {
+    val id = num(r, "id")
+    val file = r.getAttributeValue(null, "file") match {
+      case null => ""
+      case s => s.trim
+    }
+    val unlock = new ListBuffer[Int]
+    var depth = 1
+    while (depth > 0) {
+      r.next() match {
+        case START_ELEMENT =>
+          depth += 1
+          if (r.getLocalName == "unlock") unlock += num(r, "id")
+        case END_ELEMENT => depth -= 1
+        case _ =>
+      }
+    }
+    new PackEntry(id, file, unlock.toList)
+  }
+
+  private def attr(r: XMLStreamReader, name: String): String = {
+    val v = r.getAttributeValue(null, name)
+    if (v == null) throw new NoSuchElementException(name + " at " + r.getLocation)
+    v
+  }
+
+  private def num(r: XMLStreamReader, name: String): Int = attr(r, name).toInt
+}
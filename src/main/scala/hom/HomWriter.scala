@@ -0,0 +1,160 @@
+package hom
+
+import java.io.Writer
+
+import scala.xml.{Atom, Elem, Node, Text, Unparsed}
+
+/**
+ * Writes levels and packs as indented XML straight to a Writer, one element at a time,
+ * without building the document or formatting it to a string first.
+ * The output reads back with HomReader (and the scala.xml loader) to the same level or pack.
+ */
+class HomWriter(out: Writer, tab: Int = 2) {
+
+  private var depth = 0
+
+  def level(g: GameLevel) {
+    start("houseofmirrors")
+    // the description is markup, so it is written as is
+    indent()
+    out.write("<description>")
+    out.write(g.description)
+    out.write("</description>\n")
+    empty("bounds", "width" -> g.bounds.width, "height" -> g.bounds.height)
+    start("fixedGates")
+    g.fixed_gates.foreach(gate)
+    end("fixedGates")
+    start("moveableGates")
+    g.moveable_gates.foreach(gate)
+    end("moveableGates")
+    end("houseofmirrors")
+  }
+
+  /** The pack, with a solution element for each level that has a solution file. */
+  def pack(p: GamePack, solution: Int => Option[String] = _ => None) {
+    start("HoMPack")
+    start("unlocked")
+    for (u <- p.unlockedLevels.toList.sortWith(_ < _)) empty("ulevel", "id" -> u)
+    end("unlocked")
+    for (b <- p.traceLimits) {
+      // only the limits the pack declares
+      empty("traceBudget", List("rays" -> b.rays, "segments" -> b.segments, "millis" -> b.millis).collect { case (k, Some(v)) => (k, v) }: _*)
+    }
+    for (e <- p.entries) {
+      val s = solution(e.id)
+      if (e.unlock.isEmpty && s.isEmpty) {
+        empty("level", "id" -> e.id, "file" -> e.file)
+      } else {
+        start("level", "id" -> e.id, "file" -> e.file)
+        for (i <- e.unlock) empty("unlock", "id" -> i)
+        for (f <- s) empty("solution", "file" -> f)
+        end("level")
+      }
+    }
+    end("HoMPack")
+  }
+
+  /** Any document; whitespace between elements is replaced by indentation. */
+  def node(n: Node) {
+    n match {
+      case e: Elem =>
+        val attrs = e.attributes.toList.map(a => (a.key, a.value.text))
+        val children = e.child.filterNot(c => c.isInstanceOf[Text] && c.text.trim.isEmpty)
+        if (children.isEmpty) {
+          empty(e.label, attrs: _*)
+        } else if (children.forall(_.isInstanceOf[Atom[_]])) {
+          indent()
+          open(e.label, attrs)
+          out.write(">")
+          children.foreach(text)
+          out.write("</" + e.label + ">\n")
+        } else {
+          start(e.label, attrs: _*)
+          children.foreach(node)
+          end(e.label)
+        }
+      case x =>
+        indent()
+        text(x)
+        out.write("\n")
+    }
+  }
+
+  private def text(n: Node) {
+    n match {
+      case u: Unparsed => out.write(u.data)
+      case t: Atom[_] => out.write(escape(t.text.trim))
+      case x => out.write(x.toString)
+    }
+  }
+
+  private def gate(g: Gate) {
+    val name = g match {
+      case x: Source => "Source"
+      case x: Conduit => "Conduit"
+      case x: Mirror => "Mirror"
+      case x: Prism => "Prism"
+      case x: PartialMirror => "PartialMirror"
+      case x: CrossMirror => "CrossMirror"
+      case x: Detector => "Detector"
+      case x: Blocker => "Blocker"
+      case x: WormHole => "WormHole"
+      case x: SilveredSurface => throw new IllegalArgumentException("No element for " + x)
+    }
+    val p = g.position
+    g match {
+      case x: Source => empty(name, "x" -> p.x, "y" -> p.y, "direction" -> x.direction, "color" -> x.color)
+      case x: Oriented => empty(name, "x" -> p.x, "y" -> p.y, "direction" -> x.direction)
+      case x: Detector =>
+        // color is either required or unwanted
+        def need(b: Boolean) = if (b) "required" else "unwanted"
+        empty(name, "x" -> p.x, "y" -> p.y, "red" -> need(x.wavelength.r), "green" -> need(x.wavelength.g), "blue" -> need(x.wavelength.b))
+      case x: WormHole => empty(name, "x1" -> p.x, "y1" -> p.y, "x2" -> x.twin.position.x, "y2" -> x.twin.position.y)
+      case x => empty(name, "x" -> p.x, "y" -> p.y)
+    }
+  }
+
+  private def start(label: String, attrs: (String, Any)*) {
+    indent()
+    open(label, attrs)
+    out.write(">\n")
+    depth += 1
+  }
+
+  private def end(label: String) {
+    depth -= 1
+    indent()
+    out.write("</" + label + ">\n")
+  }
+
+  private def empty(label: String, attrs: (String, Any)*) {
+    indent()
+    open(label, attrs)
+    out.write("/>\n")
+  }
+
+  private def open(label: String, attrs: Seq[(String, Any)]) {
+    out.write('<')
+    out.write(label)
+    for ((k, v) <- attrs) {
+      out.write(' ')
+      out.write(k)
+      out.write("=\"")
+      out.write(escape(v.toString))
+      out.write('"')
+    }
+  }
+
+  private def indent() {
+    var i = depth * tab
+    while (i > 0) {
+      out.write(' ')
+      i -= 1
+    }
+  }
+
+  private def escape(s: String): String = {
+    if (s.indexOf('&') < 0 && s.indexOf('<') < 0 && s.indexOf('>') < 0 && s.indexOf('"') < 0) s
+    else s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;")
+  }
+}
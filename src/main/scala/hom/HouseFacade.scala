@@ -21,6 +21,10 @@ class HouseFacade @Inject()(val model: IModel, val view: IView, val controller:
 
   override def initializeController() {
     super.initializeController()
+    // intern our notifications first, so their ids are the enumeration ids
+    for (n <- notes.HouseNotifications.values) {
+      if (this.view.notificationId(n.toString) != n.id) HouseApplication.apperror("Notification " + n + " is already interned")
+    }
     this.controller.asInstanceOf[Controller].setFacade(this)
     this.controller.asInstanceOf[Controller].setObserverRegistry(this.view)
     registerCommand(Startup.toString, classOf[StartupCommand])
@@ -40,9 +44,9 @@ class HouseFacade @Inject()(val model: IModel, val view: IView, val controller:
     super.registerMediator(m);
   }
 
-  def sendNotification(n: HouseNotificationType) { sendNotification(n.toString, null, null) }
+  def sendNotification(n: HouseNotificationType) { sendNotification(n, null) }
 
-  def sendNotification(n: HouseNotificationType, body: AnyRef) { sendNotification(n.toString, body, null) }
+  def sendNotification(n: HouseNotificationType, body: AnyRef) { notifyObservers(new Notification(n.id, n.toString, body, null)) }
 
   def sendNotification[T <: AnyRef](n: notes.HouseNotification[T]) { notifyObservers(n) }
 }
@@ -55,7 +59,9 @@ trait RichNotifier {
   import notes.MessageTypes.Error
   def houseFacade: HouseFacade = getFacade.asInstanceOf[HouseFacade]
   def sendNotification[T <: AnyRef](n: HouseNotification[T]) { houseFacade.notifyObservers(n) }
-  def sendNotification(n: HouseNotificationType, body: AnyRef = null, subtype: String = null) { sendNotification(n.toString, body, subtype) }
+  def sendNotification(n: HouseNotificationType, body: AnyRef = null, subtype: String = null) {
+    houseFacade.notifyObservers(new Notification(n.id, n.toString, body, subtype))
+  }
   def sendError(m: String) = sendNotification(BrokenMirror, m, Error.toString)
   implicit def toConvertibleNotification(n: INotification): ConvertibleNotification = {
     n match {
@@ -72,6 +78,7 @@ trait RichNotifier {
       notes.HouseNotifications.forNotification(this)
     }
     def getName: String = not.getName
+    def getId: Int = not.getId
     def getBody: AnyRef = not.getBody
     def setBody(b: AnyRef) { not.setBody(b) }
     def getType: String = not.getType
@@ -83,12 +90,53 @@ trait RichNotifier {
 /**
  * A conventional handler that delegates the assembly
  * of the rest of the PureMVC infrastructure.
+ * The default pack is parsed on a worker while the frame is built; the game starts when both are done.
  */
+@RunsOn(Affinity.UI)
 class StartupCommand @Inject()(cf: CommandFactory) extends MacroCommand(cf) {
   override def initializeMacroCommand() {
     addSubCommand(classOf[ControllerPrepCommand]);
     addSubCommand(classOf[ModelPrepCommand]);
-    addSubCommand(classOf[ViewPrepCommand]);
+    addSubCommand(classOf[PreloadCommand], classOf[ModelPrepCommand]);
+    addSubCommand(classOf[ViewPrepCommand], classOf[ModelPrepCommand]);
+    addSubCommand(classOf[StartGameCommand], classOf[PreloadCommand], classOf[ViewPrepCommand]);
+  }
+}
+
+/**
+ * Parse the default pack and the level to be played first, for StartGameCommand to pick up.
+ * A game resumed from the journal finds the pack only if it is the default one.
+ */
+@RunsOn(Affinity.WORKER)
+class PreloadCommand @Inject()(pack: GamePackProxy) extends SimpleCommand {
+  override def execute(n: INotification) {
+    val requested = n.getBody match {
+      case HouseOfMirrors => HouseOfMirrors.requestedLevel
+      case _ => None
+    }
+    try {
+      pack.preload(GamePack.snapshotOf(HouseOfMirrors.DefaultGamePack), requested.getOrElse(0))
+    } catch {
+      case e: Exception => // loading it in earnest will report the problem
+    }
+    Timing.mark("preload")
+  }
+}
+
+/**
+ * Pick up where the last game left off, unless a level was asked for; otherwise start the default pack.
+ */
+class StartGameCommand extends SimpleCommand with RichNotifier {
+  override def execute(n: INotification) {
+    val requested = n.getBody match {
+      case HouseOfMirrors => HouseOfMirrors.requestedLevel
+      case _ => None
+    }
+    Timing.mark("startup")
+    val resumed = requested.isEmpty && getFacade.retrieveMediator(JournalMediator.Name).asInstanceOf[JournalMediator].resume()
+    if (!resumed) {
+      sendNotification(notes.LoadGamePackNotification(GamePack.snapshotOf(HouseOfMirrors.DefaultGamePack), requested.getOrElse(0)))
+    }
   }
 }
 
@@ -108,6 +156,9 @@ class ControllerPrepCommand extends SimpleCommand {
     getFacade.registerCommand(SaveGame.toString, classOf[SaveGameCommand]);
     getFacade.registerCommand(PackLoaded.toString, classOf[HistoryCommand]);
     getFacade.registerCommand(Trace.toString, classOf[HistoryCommand]);
+    getFacade.registerCommand(Undo.toString, classOf[UndoCommand]);
+    getFacade.registerCommand(Redo.toString, classOf[UndoCommand]);
+    getFacade.registerCommand(PackChanged.toString, classOf[ReloadCommand]);
   }
 }
 
@@ -117,15 +168,18 @@ import java.io.{File, FileWriter}
  * Initiate loading a game pack (of levels).
  * Level Zero is loaded implicitly, and a LevelLoaded
  * notification is emitted.
+ * The pack is parsed on the loader worker, so the level is requested when the pack arrives.
  */
+@Reusable
 class LoadGamePackCommand @Inject()(private val packProxy: GamePackProxy) extends SimpleCommand {
   //private lazy val packProxy = this.facade.retrieveProxy("GamePack").asInstanceOf[GamePackProxy]
   override def execute(n: INotification) {
     n match {
       case load: notes.LoadGamePackNotification =>
         load.body match {
-          case (what: String, level: Int) => this.packProxy.loadPack(what); emitLoadLevel(level)
-          case (what: File, level: Int) => this.packProxy.loadPack(what); emitLoadLevel(level)
+          case (what: String, level: Int) => this.packProxy.loadPack(what) { emitLoadLevel(level) }
+          case (what: File, level: Int) => this.packProxy.loadPack(what) { emitLoadLevel(level) }
+          case (what: Resource, level: Int) => this.packProxy.loadPack(what) { emitLoadLevel(level) }
           case _ => println("Bad load game")
         }
     }
@@ -144,7 +198,10 @@ class LoadGamePackCommand @Inject()(private val packProxy: GamePackProxy) extend
  * Load a game level.
  * The requested level must be unlocked.
  * The current level need not be in a completed state.
+ * Levels which may be played next (the unlocks of the requested level, and the following level)
+ * are prefetched in the background.
  */
+@Reusable
 class LoadLevelCommand @Inject()(private val pack: GamePackProxy,
                                  private val level: GameLevelProxy,
                                  private val history: HistoryProxy) extends SimpleCommand {
@@ -159,37 +216,50 @@ class LoadLevelCommand @Inject()(private val pack: GamePackProxy,
         val request = n.getBody.asInstanceOf[Int]
         loadLevel(request, true)
       case Next =>
-        if (!this.level.isLoaded) HouseApplication.apperror("No level")
-        loadLevel(this.level.gameLevel.level + 1, true)
+        loadLevel(current + 1, true)
       case Reset =>
-        if (!this.level.isLoaded) HouseApplication.apperror("No level")
-        loadLevel(this.level.gameLevel.level, false)
+        loadLevel(current, false)
     }
   }
+  // the level asked for last, which may still be loading
+  private def current: Int = this.level.requestedLevel.getOrElse(HouseApplication.apperror("No level"))
   private def loadLevel(request: Int, withHistory: Boolean) {
-    val which: Int = if (request >= 0) request else this.level.gameLevel.level + 1
+    val which: Int = if (request >= 0) request else current + 1
     if (this.pack.gamePack.isUnlocked(which)) {
+      val p = this.pack.gamePack
       if (withHistory && this.history.hasGameLevel(which)) {
-        this.level.loadLevel(this.history.history.get(which).get, which)
+        val s = this.history.solution(which)
+        this.level.loadLevel(which) { s.applyTo(this.pack.newGameLevel(p, which)) }
       } else {
-        this.level.loadLevel(this.pack.gamePack.levelResource(which), which)
+        this.level.loadLevel(which) { this.pack.newGameLevel(p, which) }
       }
+      prefetchSuccessors(which)
     } else {
       sendNotification(BrokenMirror.toString, "Your way to level " + which + " is blocked by a locked door!", null)
     }
   }
+  private def prefetchSuccessors(which: Int) {
+    val p = this.pack.gamePack
+    if (p.isLevelDefined(which)) {
+      val next = (p.packEntryForLevel(which).unlock ::: List(which + 1)).distinct
+      this.pack.prefetch(next.filterNot(this.history.hasGameLevel))
+    }
+  }
 }
 
 /**
  * Invoked when a level is loaded or updated, to generate the "trace" of the current level.
  * Emits Trace and Status notifications for the UI, and handles unlocking levels when the current
- * level is completed.
+ * level is completed. An update that changed the board is recorded, so that it can be undone.
  */
+@Reusable
 class TraceCommand @Inject()(pack: GamePackProxy, level: GameLevelProxy) extends SimpleCommand with RichNotifier {
   override def execute(n: INotification) {
     import notes.HouseNotifications._
+    if (n.asType == LevelUpdate) this.level.updated()
     val state: GameState = this.level.trace
     sendNotification(Trace, state)
+    Timing.mark("first trace")
     sendNotification(Status, state.status)
     if (state.status.isComplete) {
       if (this.pack.gamePack.unlockAll(this.level.gameLevel.level)) { /*println("New levels unlocked.")*/ }
@@ -202,6 +272,7 @@ class TraceCommand @Inject()(pack: GamePackProxy, level: GameLevelProxy) extends
  * When a new game pack is loaded, game history is cleared.
  * Retains only the first completion of a level; there may be multiple solutions to a level.
  */
+@Reusable
 class HistoryCommand @Inject()(private val history: HistoryProxy, private val level: GameLevelProxy) extends SimpleCommand with RichNotifier {
   import notes.HouseNotifications._
   override def execute(n: INotification) = n.asType match {
@@ -215,6 +286,69 @@ class HistoryCommand @Inject()(private val history: HistoryProxy, private val le
   }
 }
 
+/**
+ * Takes back changes to the level being played, and makes them again.
+ * Each update that changed the board can be undone, as TraceCommand records it; the board after
+ * an undo or redo is journaled.
+ */
+@Reusable
+class UndoCommand @Inject()(private val level: GameLevelProxy, private val journal: Journal) extends SimpleCommand with RichNotifier {
+  import notes.HouseNotifications._
+  override def execute(n: INotification) = n.asType match {
+    case Undo => if (level.isLoaded && level.undo()) reverted()
+    case Redo => if (level.isLoaded && level.redo()) reverted()
+  }
+  private def reverted() {
+    journal.board(Solution(level.gameLevel))
+    sendNotification(LevelUpdate)
+  }
+}
+
+/**
+ * Picks up edits to the files of the pack being played, when its directory is watched.
+ * Only what changed is parsed again: the pack file if it changed, and the current level if its file did.
+ * Nothing is announced unless the current level is affected; then it is loaded again, with its
+ * moveable gates kept where they were as far as the edited level allows.
+ * The reloaded pack is announced as PackReloaded, not PackLoaded, so the solutions of levels that were
+ * not edited are kept.
+ */
+@Reusable
+class ReloadCommand @Inject()(private val pack: GamePackProxy,
+                              private val level: GameLevelProxy,
+                              private val history: HistoryProxy) extends SimpleCommand with RichNotifier {
+  import notes.HouseNotifications._
+  override def execute(n: INotification) {
+    val names = n.getBody.asInstanceOf[Set[String]]
+    val p = pack.gamePack
+    val edited = p.levelsNamed(names)
+    pack.forget(p, edited)
+    edited.foreach(history.forget)
+    if (p.resource.exists(r => r.isFile && names.contains(r.asFile.getName))) {
+      pack.reloadPack { (before, after) =>
+        // levels now in other files, or gone, are as good as edited
+        val moved = before.entries.filter(e => !after.isLevelDefined(e.id) || after.packEntryForLevel(e.id).file != e.file).map(_.id)
+        moved.foreach(history.forget)
+        if (level.isLoaded && (before.resource.get.extension == Resource.BinaryPackExt || moved.contains(current) || edited(current))) {
+          sendNotification(PackReloaded, after.resource.get)
+          reloadLevel()
+        }
+      }
+    } else if (level.isLoaded && edited(current)) {
+      reloadLevel()
+    }
+  }
+  private def current: Int = level.gameLevel.level
+  private def reloadLevel() {
+    val p = pack.gamePack
+    val which = current
+    if (p.isLevelDefined(which)) {
+      // the board as it is now, since the player may go on moving gates while the level is parsed
+      val before = level.gameLevel.copy
+      level.loadLevel(which) { pack.newGameLevel(p, which).keepPositions(before) }
+    }
+  }
+}
+
 /**
  * Base class of commands that read/write *.hom[p] files.
  */
@@ -222,7 +356,6 @@ abstract class FileCommand extends SimpleCommand with RichNotifier with WithFile
   import java.io._
   import java.nio.charset.Charset
   import scala.xml._
-  private val printWidth = 120
   private val printTab = 2
   override final def execute(n: INotification) {
     val file = n.getBody.asInstanceOf[File]
@@ -230,32 +363,33 @@ abstract class FileCommand extends SimpleCommand with RichNotifier with WithFile
   }
   protected def executeBody(f: File)
 
-  protected final def prettyPrinter = new PrettierPrinter(printWidth, printTab)
+  protected final def homWriter(w: Writer) = new HomWriter(w, printTab)
 }
 
+@Reusable
 class OpenFileCommand extends FileCommand {
   import scala.xml._
   private val OptFileExt = """.*?(\..*)?""".r
   override def executeBody(f: File) {
     val OptFileExt(x) = f.getName
     x match {
-      case ".hom" => // loading level file not supported yet
-      case ".homp" => sendNotification(notes.LoadGamePackNotification(f, -1)) // load pack and start at lowest level
+      case Resource.LevelExt | Resource.BinaryLevelExt => // loading level file not supported yet
+      case Resource.PackExt | Resource.BinaryPackExt => sendNotification(notes.LoadGamePackNotification(f, -1)) // load pack and start at lowest level
       case _ => // don't know what that is
     }
   }
 }
 
 /** Save the current game to a file. */
+@Reusable
 class SaveFileCommand @Inject()(level: GameLevelProxy) extends FileCommand {
   override def executeBody(f: File) {
     if (f.exists) {
       sendNotification(notes.HouseNotifications.BrokenMirror.toString, "File exists: " + f.getAbsolutePath, notes.MessageTypes.Error.toString)
     } else {
-      f.createNewFile
-      val xml = level.toXML
-      withWriter(f) {
-        w => w.write(prettyPrinter.format(xml))
+      val g = level.gameLevel
+      withAtomicWriter(f) {
+        w => homWriter(w).level(g)
       }
     }
   }
@@ -264,59 +398,62 @@ class SaveFileCommand @Inject()(level: GameLevelProxy) extends FileCommand {
 /**
  * Save the game pack with history.
  * For pack file "foo.homp", solution file for level N is "foo_N.hom".
+ * Solution files are written in parallel, then the pack file that names them.
  */
+@Reusable
 class SaveGameCommand @Inject()(private val pack: GamePackProxy, private val history: HistoryProxy) extends FileCommand {
-  import scala.xml._
   import java.io._
+  import java.util.concurrent.{Callable, ExecutionException, Executors}
+  import scala.collection.JavaConversions._
   override def executeBody(f: File) {
     def noext(s: String): String = if (s.lastIndexOf('.') > 0) s.substring(0, s.lastIndexOf('.')) else s
     def solutionFileName(simple: String, id: String): String = simple + "_" + id + ".hom"
-    //def solutionFileName(id: String): String = noext(f.getName) + "_" + id + ".hom"
     if (f.exists) {
       sendError("File exists: " + f.getAbsolutePath)
       return;
     }
     val base = Resource(f)
     val namer = solutionFileName(noext(f.getName), _: String)
-    writeSolutionFiles(base, namer)
-    // update the game xml with our solution file names
-    val packElem: Elem = updatePack(pack.toXML, namer)
-    withWriter(f) {
-      w => w.write(prettyPrinter.format(packElem))
+    try {
+      writeSolutionFiles(base, namer)
+    } catch {
+      case e: IOException =>
+        sendError("Could not save solutions: " + e.getMessage)
+        return;
     }
-  }
-
-  private def writeSolutionFiles(base: Resource, namer: (String) => String) {
-    for ((level, xml) <- this.history.history) {
-      val name = namer(level.toString)
-      val r = Resource(base, name)
-      withWriter(r.asFile) {
-        w => w.write(prettyPrinter.format(xml))
-      }
+    // the game xml names our solution files
+    val p = pack.gamePack
+    withAtomicWriter(f) {
+      w => homWriter(w).pack(p, i => if (history.hasGameLevel(i)) Some(namer(i.toString)) else None)
     }
   }
 
-  // to each level <HoMPack><level id="5" file="..."><unlock id="6"/> add child <level ...><solution file="mygame-5.hom"/>
-  private def updatePack(input: Elem, namer: (String) => String): Elem = {
-    def id(n: Node): String = { val s = n \ "@id"; s(0).asInstanceOf[Text].data }
-    def hasHistoryFor(n: Node): Boolean = {
-      def hasHistoryFor(i: Int) = history.hasGameLevel(i)
-      require(n.label == "level")
-      hasHistoryFor(Integer.parseInt(id(n)))
-    }
-    def addChild(n: Node, e: Node) = Elem(n.prefix, n.label, n.attributes, n.scope, (n.child ++ e):_*)
-    def addSolution(n: Node, f: String) = addChild(n, Elem(null, "solution", new UnprefixedAttribute("file", f, Null), TopScope))
-    def updateLevels(ch: Seq[Node]): Seq[Node] = {
-      for (c <- ch) yield c match {
-        case x @ <level>{ _* }</level> if hasHistoryFor(x) => addSolution(x, namer(id(x)))
-          //addChild(x, Elem(null, "solution", new UnprefixedAttribute("file", solutionFileName(simple, id(x)), Null), TopScope))
-        case x => x  // <unlocked> or <level> that's not in our history (or junk whitespace text)
+  private def writeSolutionFiles(base: Resource, namer: (String) => String) {
+    val solutions = this.history.solutions
+    if (solutions.isEmpty) return
+    val p = this.pack.gamePack
+    val threads = solutions.length.min(Runtime.getRuntime.availableProcessors)
+    val executor = Executors.newFixedThreadPool(threads)
+    try {
+      val tasks = new java.util.ArrayList[Callable[Unit]]
+      for (s <- solutions) tasks.add(new Callable[Unit] {
+        def call() {
+          val g = s.applyTo(pack.newGameLevel(p, s.level))
+          val r = Resource(base, namer(s.level.toString))
+          withAtomicWriter(r.asFile) {
+            w => homWriter(w).level(g)
+          }
+        }
+      })
+      for (result <- executor.invokeAll(tasks)) {
+        try {
+          result.get
+        } catch {
+          case e: ExecutionException => throw e.getCause
+        }
       }
-    }
-    // same as require(input.label == "HoMPack"); <HoMPack>{ updateLevels(input.child) }</HoMPack>
-    input match {
-      case <HoMPack>{ ch @ _* }</HoMPack> => <HoMPack>{ updateLevels(ch) }</HoMPack>
-      //case x => throw new RuntimeException()
+    } finally {
+      executor.shutdown()
     }
   }
 }
@@ -342,60 +479,288 @@ class ModelPrepCommand extends SimpleCommand {
 
 import org.puremvc.java.patterns.proxy.Proxy
 
+/**
+ * Holds the current game pack, and a cache of parsed level templates.
+ * Packs are parsed on the loader worker; the new pack is installed on the EDT.
+ * Reset and revisiting a level create the level from its cached template instead of parsing the file again.
+ */
 @Singleton
-class GamePackProxy extends Proxy("GamePack", null) {
+class GamePackProxy @Inject()(private val loader: Loader) extends Proxy("GamePack", null) {
   import notes.HouseNotifications._
+  import notes.MessageTypes.Error
   setData(new GamePack(Set.empty, Nil))
   def gamePack = getData.asInstanceOf[GamePack]
-  def loadPack(resource: String) {
-    setData(GamePack(resource))
-    sendNotification(PackLoaded.toString, resource, null)
+  def loadPack(resource: String)(andThen: => Unit) { load(resource, preloaded(resource).getOrElse(GamePack(resource)), andThen) }
+  def loadPack(file: File)(andThen: => Unit) { load(file, GamePack(file), andThen) }
+  def loadPack(resource: Resource)(andThen: => Unit) {
+    load(resource, preloaded(resource.uri.toString).getOrElse(GamePack(resource)), andThen)
   }
-  def loadPack(file: File) {
-    setData(GamePack(file))
-    sendNotification(PackLoaded.toString, file, null)
+  /** A pack parsed ahead of time, by its name and by its URI; taken by the first load of either. */
+  private val early = new java.util.concurrent.atomic.AtomicReference[(String, String, GamePack)]
+  /**
+   * Parse the named pack and warm the template cache with its level n, ahead of loading them.
+   * Called from the startup worker, while the frame is built.
+   */
+  def preload(name: String, n: Int) {
+    val r = Resource(name)
+    val p = GamePack(r)
+    if (p.isLevelDefined(n)) p.levelTemplate(n, Some(levelCache))
+    early.set((name, r.uri.toString, p))
+  }
+  private def preloaded(key: String): Option[GamePack] = {
+    val e = early.get
+    if (e != null && (e._1 == key || e._2 == key) && early.compareAndSet(e, null)) Some(e._3) else None
+  }
+  private def load(what: AnyRef, parse: => GamePack, andThen: => Unit) {
+    sendNotification(LevelLoading.toString, what, null)
+    loader(parse) { p =>
+      Timing.mark("pack")
+      setData(p)
+      watch(p)
+      sendNotification(PackLoaded.toString, what, null)
+      andThen
+    } { t =>
+      sendNotification(BrokenMirror.toString, "Cannot load game pack " + what + ": " + t.getMessage, Error.toString)
+    }
+  }
+  /**
+   * Parse the current pack again after its file was edited, and install it quietly, keeping the levels unlocked
+   * so far; then continue with the packs before and after. Levels are parsed again only if their files changed.
+   */
+  def reloadPack(andThen: (GamePack, GamePack) => Unit) {
+    val before = gamePack
+    for (r <- before.resource) {
+      levelCache.invalidate(r.uri.toString)
+      Resource.flushCache()
+      loader(GamePack(r)) { p =>
+        before.unlockedLevels.foreach(p.unlock)
+        setData(p)
+        andThen(before, p)
+      } { t =>
+        sendNotification(BrokenMirror.toString, "Cannot reload game pack " + r + ": " + t.getMessage, Error.toString)
+      }
+    }
+  }
+  /** Forget what was parsed of the given levels of pack p, whose files were edited. */
+  def forget(p: GamePack, levels: Set[Int]) {
+    if (!levels.isEmpty) Resource.flushCache()
+    for (n <- levels) levelCache.invalidate(p.levelResource(n).uri.toString)
+  }
+  private var watcher: Option[PackWatcher] = None
+  // with hom.watch, watch the directory of each pack loaded, and announce edits to it on the EDT
+  private def watch(p: GamePack) {
+    if (PackWatcher.enabled && watcher.map(_.dir) != p.packDir) {
+      watcher.foreach(_.close())
+      watcher = p.packDir.map { d =>
+        new PackWatcher(d, PackWatcher.DefaultQuiet)(names => scala.swing.Swing.onEDT {
+          sendNotification(PackChanged.toString, names, null)
+        })
+      }
+    }
+  }
+  val levelCache: LevelCache = LevelCache.fromProperties
+  /** A new game level n of the given pack, from the cached template. May block on parsing, so call it from the worker. */
+  def newGameLevel(p: GamePack, n: Int): GameLevel = {
+    val g = p.levelTemplate(n, Some(levelCache)).instantiate(n)
+    g.traceBudget = p.traceBudget
+    g
+  }
+  /** Warm the template cache with levels of the current pack that may be played soon. */
+  def prefetch(levels: Seq[Int]) {
+    val p = gamePack
+    for (n <- levels if p.isLevelDefined(n)) {
+      loader.prefetch { p.levelTemplate(n, Some(levelCache)) }
+    }
   }
   import scala.xml.Elem
   def toXML: Elem = gamePack.toXML
 }
 
+/**
+ * Holds the level being played.
+ * Levels are parsed on the loader worker; the new level is installed on the EDT.
+ */
 @Singleton
-class GameLevelProxy extends Proxy("GameLevel", null) {
+class GameLevelProxy @Inject()(private val loader: Loader) extends Proxy("GameLevel", null) {
   import notes.HouseNotifications._
+  import notes.MessageTypes.Error
   import scala.xml.Elem
   def gameLevel: GameLevel = getData.asInstanceOf[GameLevel]
   def isLoaded = getData != null
+  /** The level of the last load issued, while it is in flight; loads complete in order, so it is the one shown next. */
+  @volatile private var requested: Option[Int] = None
+  // loads issued so far; only the last to be issued leaves nothing in flight
+  @volatile private var loads = 0
+  /**
+   * The level asked for last: the level being loaded if a load is in flight, otherwise the current level.
+   * Paging and resetting go from here, so that a request made while a load is in flight is not lost.
+   */
+  def requestedLevel: Option[Int] = if (requested.isDefined) requested else if (isLoaded) Some(gameLevel.level) else None
+  /** The orientations of one gate traced ahead of time, good while the rest of the board is unchanged. */
+  @volatile private var rotations: Option[Rotations] = None
+  /** The orientations being traced, if any: the gate, the board, and the speculation. */
+  private var rotating: Option[(Point, List[(Point, Option[Directions.Direction])], java.util.concurrent.Future[_])] = None
   def loadLevel(resource: Resource, which: Int) {
-    if (gameLevel != null) {
-      gameLevel.dispose()
-    }
     //println("Loading level " + which + " from " + resource)
-    setData(GameLevel(resource, which))
-    sendNotification(LevelLoaded.toString, gameLevel, null)
+    load(which, GameLevel(resource, which))
+  }
+  /** Load the level created by parse, which is invoked on the loader worker. */
+  def loadLevel(which: Int)(parse: => GameLevel) {
+    load(which, parse)
   }
   def loadLevel(xml: Elem, which: Int) {
-    if (gameLevel != null) {
-      gameLevel.dispose()
-    }
     //println("Loading history " + which )
-    setData(GameLevel.fromXML(xml, which))
-    sendNotification(LevelLoaded.toString, gameLevel, null)
+    load(which, GameLevel.fromXML(xml, which))
+  }
+  private def load(which: Int, parse: => GameLevel) {
+    sendNotification(LevelLoading.toString, which.asInstanceOf[AnyRef], null)
+    this.loads += 1
+    val ticket = this.loads
+    this.requested = Some(which)
+    loader(parse) { g =>
+      if (ticket == this.loads) this.requested = None
+      if (gameLevel != null) {
+        gameLevel.dispose()
+      }
+      Timing.mark("level")
+      forgetRotations()
+      setData(g)
+      startHistory()
+      sendNotification(LevelLoaded.toString, gameLevel, null)
+    } { t =>
+      // a level that cannot be loaded is not asked for any more; the level shown stays
+      if (ticket == this.loads) this.requested = None
+      t match {
+        case e: BadLevelException =>
+          sendNotification(BrokenMirror.toString, "Level " + which + " is broken: " + e.getMessage, Error.toString)
+        case t =>
+          sendNotification(BrokenMirror.toString, "Cannot load level " + which + ": " + t.getMessage, Error.toString)
+      }
+    }
+  }
+  private val undoHistory = new UndoHistory(UndoHistory.depthFromProperties)
+  /** The version of the level when it was last updated. */
+  private var seen: BoardVersion = _
+
+  /** Begin the history afresh at the board as it is, which undo cannot go back past. */
+  def startHistory() {
+    this.undoHistory.clear()
+    this.seen = this.gameLevel.version
+  }
+
+  /** The level has been updated; if it has changed since the last update, the change can be undone. */
+  def updated() {
+    val v = this.gameLevel.version
+    if (v ne this.seen) {
+      if (this.seen != null) this.undoHistory.record(this.seen)
+      this.seen = v
+    }
+  }
+
+  /** Take back the last change; false if there is none. */
+  def undo(): Boolean = revert(this.undoHistory.undo(this.gameLevel.version))
+
+  /** Make the last change taken back again; false if there is none. */
+  def redo(): Boolean = revert(this.undoHistory.redo(this.gameLevel.version))
+
+  private def revert(to: Option[BoardVersion]): Boolean = {
+    for (v <- to) {
+      this.gameLevel.restore(v)
+      this.seen = v
+    }
+    to.isDefined
+  }
+
+  /** The trace of the current level, from the rotations traced ahead of time if they cover it. */
+  def trace: GameState = {
+    val g = this.gameLevel
+    val cached = for (r <- this.rotations; s <- r.stateOf(g)) yield s
+    cached.getOrElse(g.trace)
+  }
+
+  /**
+   * Trace every orientation of the turnable gate at p in the background, so that turning it needs no trace.
+   * Nothing is done if they are already traced, or being traced, for the board as it is now.
+   */
+  def traceRotations(p: Point) {
+    val g = this.gameLevel
+    g.gateAt(p) match {
+      case Some(t: Turnable) =>
+        val board = Rotations.board(g, p)
+        val covered = this.rotations.exists(r => r.at == p && r.board == board) || this.rotating.exists(r => r._1 == p && r._2 == board)
+        if (!covered) {
+          cancelRotations()
+          val c = g.copy
+          val f = loader.speculate {
+            var states = Map.empty[Directions.Direction, GameState]
+            for (i <- 0 until 8) {
+              c.turnCW(p)
+              for (o <- c.gateAt(p)) states += (o.asInstanceOf[Oriented].direction -> c.trace)
+            }
+            states
+          } { states =>
+            this.rotating = None
+            this.rotations = Some(new Rotations(p, board, states))
+          }
+          this.rotating = Some((p, board, f))
+        }
+      case _ =>
+    }
+  }
+
+  private def cancelRotations() {
+    for (r <- this.rotating) r._3.cancel(true)
+    this.rotating = None
+  }
+
+  private def forgetRotations() {
+    cancelRotations()
+    this.rotations = None
+  }
+
+  /**
+   * Trace a variation of the current level in the background. The change is made to a copy, taken now,
+   * and the state is handed to show on the EDT if the change was possible and the speculation not cancelled.
+   */
+  def speculate(change: GameLevel => Boolean)(show: GameState => Unit): java.util.concurrent.Future[_] = {
+    val g = this.gameLevel.copy
+    loader.speculate { if (change(g)) Some(g.trace) else None } { s => s.foreach(show) }
+  }
+  /**
+   * Score every cell the gate at p could be moved to, in parallel on copies of the current level,
+   * handing the detectors lit for each cell to show on the EDT as they are known.
+   * With every orientation, each cell is scored for the best orientation of a turnable gate.
+   */
+  def heatmap(p: Point, everyOrientation: Boolean)(show: Seq[(Point, Int)] => Unit): java.util.concurrent.Future[_] = {
+    val g = this.gameLevel.copy
+    loader.fanOut(Heatmap.cells(g, p))(to => Heatmap.score(g, p, to, everyOrientation))(show)
   }
-  def trace: GameState = this.gameLevel.trace
   def toXML: Elem = GameLevel.toXML(gameLevel)
 }
 
 /**
- * A map of game levels externalized as XML.
+ * Solved levels of the current pack, kept as compact solutions.
+ * Full levels are materialized from the pack only when they are needed.
+ * Commands may update the history on workers while it is saved or journaled, so it is a concurrent map.
  */
 @Singleton
-class HistoryProxy extends Proxy("History", Map.empty) {
-  import scala.xml.Elem
-  def history: Map[Int, Elem] = getData.asInstanceOf[Map[Int, Elem]]
-  def putGameLevel(g: GameLevel) { setData(history + (g.level -> g.toXML)); /*println(new PrettierPrinter().format(g.toXML))*/ }
-  def hasGameLevel(g: GameLevel) = history.contains(g.level)
-  def hasGameLevel(i: Int) = history.contains(i)
-  def clear() { setData(Map.empty) }
+class HistoryProxy extends Proxy("History", new java.util.concurrent.ConcurrentHashMap[Int, Solution]) {
+  import scala.collection.JavaConversions._
+  private def history = getData.asInstanceOf[java.util.concurrent.ConcurrentHashMap[Int, Solution]]
+  /** The solved levels and their solutions. */
+  def solutions: List[Solution] = history.values.toList
+  def solution(i: Int): Solution = {
+    val s = history.get(i)
+    if (s == null) throw new NoSuchElementException("No solution for level " + i)
+    s
+  }
+  def putGameLevel(g: GameLevel) { history.put(g.level, Solution(g)) }
+  def putSolution(s: Solution) { history.put(s.level, s) }
+  def hasGameLevel(g: GameLevel) = history.containsKey(g.level)
+  def hasGameLevel(i: Int) = history.containsKey(i)
+  def clear() { history.clear() }
+  /** Forget the solution of level i, which may no longer fit it. */
+  def forget(i: Int) { history.remove(i) }
 }
 
 import scala.swing.{Dimension, FileChooser, Frame, MainFrame, MenuBar, Menu, MenuItem, Action, Dialog, BoxPanel, Orientation, Swing}
@@ -430,8 +795,8 @@ trait GameIO {
 
   import javax.swing.filechooser.FileNameExtensionFilter
   class MyFileChooser(dir: File) extends FileChooser(dir) {
-    this.peer.addChoosableFileFilter(new FileNameExtensionFilter("House of Mirrors game levels (.hom)", "hom"))
-    this.fileFilter = new FileNameExtensionFilter("House of Mirrors game packs (.homp)", "homp")
+    this.peer.addChoosableFileFilter(new FileNameExtensionFilter("House of Mirrors game levels (.hom, .homb)", "hom", "homb"))
+    this.fileFilter = new FileNameExtensionFilter("House of Mirrors game packs (.homp, .hompb)", "homp", "hompb")
   }
 }
 
@@ -464,6 +829,8 @@ trait MainFrameComponent {
         contents += (new MenuItem(Action("Quit") { sys.exit() }))
       })
       contents += (new Menu("Game") {
+        contents += (new MenuItem(Action("Undo") { sendNotification(Undo.toString, null, null) }))
+        contents += (new MenuItem(Action("Redo") { sendNotification(Redo.toString, null, null) }))
         contents += (new MenuItem(Action("Reset") { resetLevel() }))
       })
       contents += (new MenuItem(Action("Help") { sendNotification(Help.toString, null, null) }))
@@ -481,7 +848,7 @@ trait MainFrameComponent {
   }
 }
 
-class LightBoxMediatorComponent(c: Object) extends LightBoxMediator(c) {
+class LightBoxMediatorComponent(c: Object, val journal: Journal) extends LightBoxMediator(c) {
   lazy val levelProxy = getFacade.retrieveProxy("GameLevel").asInstanceOf[GameLevelProxy]
   lazy val packProxy = getFacade.retrieveProxy("GamePack").asInstanceOf[GamePackProxy]
 }
@@ -489,7 +856,7 @@ class LightBoxMediatorComponent(c: Object) extends LightBoxMediator(c) {
 /**
  * Register mediators for view components.
  */
-class ViewPrepCommand @Inject()(val pack: GamePackProxy) extends SimpleCommand
+class ViewPrepCommand @Inject()(val pack: GamePackProxy, level: GameLevelProxy, history: HistoryProxy, journal: Journal) extends SimpleCommand
   with RichNotifier with MainFrameComponent with LightBoxComponent with StatusBarComponent with StatusIconComponent with GameIO {
 
   override def execute(n: INotification) {
@@ -506,9 +873,11 @@ class ViewPrepCommand @Inject()(val pack: GamePackProxy) extends SimpleCommand
     lightBox.requestFocus
 
     getFacade.registerMediator(new ApplicationMediator(frame))
-    getFacade.registerMediator(new LightBoxMediatorComponent(lightBox))
+    getFacade.registerMediator(new LightBoxMediatorComponent(lightBox, journal))
     getFacade.registerMediator(new StatusMediator(statusBar))
     getFacade.registerMediator(new StatusIconMediator(statusIcon))
+    getFacade.registerMediator(new JournalMediator(journal, pack, level, history))
+    Timing.mark("frame")
   }
 
   private def center(f: Frame) {
@@ -532,12 +901,16 @@ class StatusMediator (c: Object) extends Mediator("status-mediator", c) {
   import scala.swing.Label
   require(c.isInstanceOf[Label])
 
-  override val listNotificationInterests = asNames(List(Status, BrokenMirror))
+  override val listNotificationInterests = asNames(List(Status, BrokenMirror, LevelLoading))
 
   override def handleNotification(n: INotification) {
-    notes.HouseNotifications findName n.getName match {
+    notes.HouseNotifications of n match {
       case Some(Status) => onStatusUpdate(n.getBody.asInstanceOf[StatusUpdate])
       case Some(BrokenMirror) => message(null, "Yikes!", n.getBody.asInstanceOf[String])
+      case Some(LevelLoading) => message(null, "Loading...", n.getBody match {
+          case i: java.lang.Integer => "Level " + i
+          case x => String.valueOf(x)
+        })
       case None => // it's not one of our notifications
       case _ => // didn't ask for anything else
     }
@@ -545,7 +918,8 @@ class StatusMediator (c: Object) extends Mediator("status-mediator", c) {
 
   import scala.xml._
   private def onStatusUpdate(s: StatusUpdate) {
-    message(XML.loadString("<p>"+s.description+"</p>"), "Progress", s.score + " of " + s.total + (if (s.isComplete) " [Completed!]" else ""))
+    message(XML.loadString("<p>"+s.description+"</p>"), "Progress", s.score + " of " + s.total + (if (s.isComplete) " [Completed!]" else "") +
+      (if (s.truncated) " [Warning: the light was too much to trace, so only part of it is shown]" else ""))
   }
 
   private def message(title: Elem, header: String, s: String) {
@@ -566,7 +940,7 @@ class StatusIconMediator(c: Object) extends Mediator("status-icon-mediator", c)
   override val listNotificationInterests = asNames(List(Status))
 
   override def handleNotification(n: INotification) {
-    notes.HouseNotifications findName n.getName match {
+    notes.HouseNotifications of n match {
       case Some(Status) => onStatusUpdate(n.getBody.asInstanceOf[StatusUpdate])
       case None => // it's not one of our notifications
       case _ => // didn't ask for anything else
@@ -580,7 +954,8 @@ class StatusIconMediator(c: Object) extends Mediator("status-icon-mediator", c)
   private def statusIcon: Label = getViewComponent.asInstanceOf[Label]
 }
 
-class StatusUpdate(val description: String, val score: Int, val total: Int) {
-  def isComplete: Boolean = score == total
+/** The detectors lit; a truncated trace may have missed some light, so it never completes a level. */
+class StatusUpdate(val description: String, val score: Int, val total: Int, val truncated: Boolean = false) {
+  def isComplete: Boolean = score == total && !truncated
 }
 
@@ -28,10 +28,20 @@ object HouseOfMirrors extends PureApplication with SwingStartup {
 
   class HouseController @Inject()(f: CommandFactory) extends Controller(f)
 
+  /**
+   * Commands are built by Guice, through a provider looked up once per command class.
+   * The controller keeps the instance of a command marked Reusable, so this runs once for those.
+   */
   class GuicedCommandFactory extends CommandFactory {
     //@Inject var injector: Injector = _
+    private val providers = new java.util.concurrent.ConcurrentHashMap[Class[_ <: ICommand], Provider[_ <: ICommand]]
     override def create(k: Class[_ <: ICommand]): ICommand = {
-      val command: ICommand = injector.getInstance(k)
+      var provider = providers.get(k)
+      if (provider == null) {
+        provider = injector.getProvider(k)
+        providers.put(k, provider)
+      }
+      val command: ICommand = provider.get
       if (command.isInstanceOf[Notifier]) {
         command.asInstanceOf[Notifier].setFacade(facade);
       }
@@ -43,29 +53,36 @@ object HouseOfMirrors extends PureApplication with SwingStartup {
     override protected def configure() = {
     	bind(classOf[CommandFactory]).to(classOf[GuicedCommandFactory])
         bind(classOf[IModel]).to(classOf[Model])
-        bind(classOf[IView]).to(classOf[View])
+        // -Dhom.eventQueue=true queues notifications, with commands on workers and mediators on the EDT
+        if (java.lang.Boolean.getBoolean("hom.eventQueue")) bind(classOf[IView]).to(classOf[EventQueueView])
+        else bind(classOf[IView]).to(classOf[View])
         bind(classOf[IController]).to(classOf[HouseController])
         bind(classOf[IFacade]).to(classOf[HouseFacade])
+        bind(classOf[Journal]).toInstance(Journal.fromProperties)
     }
   }
   val injector = Guice.createInjector(module)
   val facade = injector.getInstance(classOf[IFacade]).asInstanceOf[HouseFacade] //new HouseFacade(new Model(), new View(), new HouseController(new GuicedCommandFactory))
+  Timing.mark("injector")
+
+  /** The default pack; the build also puts a binary snapshot of it on the classpath, which is loaded instead. */
+  private[hom] val DefaultGamePack = "rowhouses/rowhouse.homp"
 
-  private val DefaultGamePack = "rowhouses/rowhouse.homp"
+  /** The level asked for on the command line, if any. */
+  private[hom] var requestedLevel: Option[Int] = None
 
-  override def startup(args: Array[String]) {
-	// sends a default Notification
-	super.startup(args)
-    val firstLevel = 
+  override def processArguments(args: Array[String]) {
+    this.requestedLevel =
       if (args.length == 1) {
         try {
-          args(0).toInt;
+          Some(args(0).toInt);
         } catch {
-          case e: NumberFormatException => 0
+          case e: NumberFormatException => Some(0)
         }
+      } else if (args.isEmpty) {
+        None
       } else {
-        0
+        Some(0)
       }
-    facade.sendNotification(notes.LoadGamePackNotification(DefaultGamePack, firstLevel))
   }
 }
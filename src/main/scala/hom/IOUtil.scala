@@ -25,4 +25,25 @@ trait WithFileWriter {
     }
     if (problem != null) throw problem
   }
+
+  /**
+   * Write the file through a temporary file in the same directory, which is then renamed over it,
+   * so the file is never seen half written.
+   */
+  protected final def withAtomicWriter(f: File)(g: Writer => Unit) {
+    import java.nio.file.{AtomicMoveNotSupportedException, Files, StandardCopyOption}
+    val dir = f.getAbsoluteFile.getParentFile
+    // padded, since a temporary file prefix must be at least three characters
+    val tmp = File.createTempFile("." + f.getName + "-", ".tmp", dir)
+    try {
+      withWriter(tmp)(g)
+      try {
+        Files.move(tmp.toPath, f.toPath, StandardCopyOption.ATOMIC_MOVE)
+      } catch {
+        case e: AtomicMoveNotSupportedException => Files.move(tmp.toPath, f.toPath, StandardCopyOption.REPLACE_EXISTING)
+      }
+    } finally {
+      tmp.delete() // nothing left to delete after a successful move
+    }
+  }
 }
@@ -0,0 +1,108 @@
+package hom
+
+import java.awt.event.{ActionEvent, ActionListener}
+
+object InputBatch {
+
+  val DefaultWindowMillis = 30
+
+  /** The batch window from the system property hom.input.coalesceMillis; 0 applies each input at once. */
+  def windowFromProperties: Int = sys.props.get("hom.input.coalesceMillis") match {
+    case Some(v) => try { v.toInt.max(0) } catch { case e: NumberFormatException => DefaultWindowMillis }
+    case None => DefaultWindowMillis
+  }
+
+  /** A net operation on one gate. */
+  sealed abstract class Op
+  /** Turn the gate at a point by clicks eighths, clockwise if positive. */
+  case class Turn(at: Point, clicks: Int) extends Op
+  /** Move the gate at a point by each step (dx, dy) in turn. */
+  case class Move(from: Point, steps: List[(Int, Int)]) extends Op
+
+  /**
+   * The shortest turn with the same result as clicks eighths, since eight make a full turn:
+   * from -3 to 4, clockwise if positive.
+   */
+  def netTurns(clicks: Int): Int = {
+    val k = ((clicks % 8) + 8) % 8
+    if (k > 4) k - 8 else k
+  }
+
+  /**
+   * Where the gate at from ends up after the steps, taken one at a time as single moves would be:
+   * a step that would leave the bounds or land on another gate is skipped.
+   */
+  def walk(g: GameLevel, from: Point, steps: Seq[(Int, Int)]): Point = {
+    var at = from
+    for ((dx, dy) <- steps) {
+      val next = Point(at.x + dx, at.y + dy)
+      if (g.bounds.contains(next) && (next == from || !g.occupied(next))) at = next
+    }
+    at
+  }
+}
+
+/**
+ * Coalesces bursts of input, such as the mouse wheel or a held arrow key, into one net operation.
+ * Turns of the same gate, or moves of the same gate, accumulate until the window has passed since the first;
+ * any other input flushes what is pending first, so operations are applied in the order they were made.
+ * Operations are applied on the EDT.
+ */
+class InputBatch(windowMillis: Int)(apply: InputBatch.Op => Unit) {
+  import InputBatch._
+
+  private var pending: Option[Op] = None
+
+  private val timer: javax.swing.Timer =
+    if (windowMillis <= 0) null
+    else {
+      val t = new javax.swing.Timer(windowMillis, new ActionListener {
+        def actionPerformed(e: ActionEvent) { flush() }
+      })
+      t.setRepeats(false)
+      t
+    }
+
+  def turn(at: Point, clicks: Int) {
+    this.pending match {
+      case Some(Turn(p, n)) if p == at => this.pending = Some(Turn(p, n + clicks))
+      case _ =>
+        flush()
+        this.pending = Some(Turn(at, clicks))
+    }
+    schedule()
+  }
+
+  def move(from: Point, dx: Int, dy: Int) {
+    this.pending match {
+      case Some(Move(p, steps)) if p == from => this.pending = Some(Move(p, (dx, dy) :: steps))
+      case _ =>
+        flush()
+        this.pending = Some(Move(from, List((dx, dy))))
+    }
+    schedule()
+  }
+
+  /** Apply what is pending now. */
+  def flush() {
+    if (this.timer != null) this.timer.stop()
+    val op = this.pending
+    this.pending = None
+    op match {
+      case Some(Move(p, steps)) => apply(Move(p, steps.reverse))
+      case Some(x) => apply(x)
+      case None =>
+    }
+  }
+
+  /** Forget what is pending, for instance when the level is replaced. */
+  def clear() {
+    if (this.timer != null) this.timer.stop()
+    this.pending = None
+  }
+
+  private def schedule() {
+    if (this.timer == null) flush()
+    else if (!this.timer.isRunning) this.timer.start()
+  }
+}
@@ -0,0 +1,316 @@
+package hom
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream, EOFException, File, FileOutputStream, IOException, RandomAccessFile}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.{Executors, ScheduledExecutorService, ThreadFactory, TimeUnit}
+import java.util.zip.CRC32
+
+import scala.collection.mutable
+
+object Journal {
+
+  // record types
+  private val PackRecord = 1
+  private val LevelRecord = 2
+  private val MoveRecord = 3
+  private val TurnRecord = 4
+  private val UnlockRecord = 5
+  private val SolvedRecord = 6
+  private val BoardRecord = 7
+
+  val DefaultFlushMillis = 250L
+  val DefaultCompactAfter = 1000
+
+  /** The journal in ${user.home}/.hom, tuned by the system properties hom.journal.flushMillis and hom.journal.compactAfter. */
+  def fromProperties: Journal = {
+    def prop[A](name: String, default: A)(f: String => A): A = sys.props.get(name) match {
+      case Some(v) => try { f(v) } catch { case e: NumberFormatException => default }
+      case None => default
+    }
+    new Journal(new File(Resource.homDir, "journal"),
+      prop("hom.journal.flushMillis", DefaultFlushMillis)(_.toLong), prop("hom.journal.compactAfter", DefaultCompactAfter)(_.toInt))
+  }
+
+  /** A move or turn made after the board was recorded. */
+  sealed abstract class Op {
+    def applyTo(g: GameLevel): Boolean
+  }
+  case class Move(from: Point, to: Point) extends Op {
+    def applyTo(g: GameLevel) = g.moveTo(from, to)
+  }
+  case class Turn(at: Point, clockwise: Boolean) extends Op {
+    def applyTo(g: GameLevel) = if (clockwise) g.turnCW(at) else g.turnCCW(at)
+  }
+
+  /** The game as recorded: the pack, its progress, and the level being played. */
+  class State {
+    var pack: Option[String] = None
+    var unlocked: Set[Int] = Set.empty
+    val solved = new mutable.HashMap[Int, Solution]
+    var level: Option[Int] = None
+    var board: Option[Solution] = None
+    val ops = new mutable.ListBuffer[Op]
+
+    /** Bring a fresh instance of the current level to the recorded board. */
+    def restore(g: GameLevel): GameLevel = {
+      require(level == Some(g.level))
+      for (b <- board) b.applyTo(g)
+      for (op <- ops) op.applyTo(g)
+      g
+    }
+  }
+}
+
+/**
+ * An append-only log of play, so that progress survives without an explicit Save Game.
+ * Records are framed by length and checksum. Appends only encode into memory; a background thread writes
+ * and forces the pending records at most every flushMillis, so input is never held up by the disk.
+ * On recovery, a torn or corrupt tail is dropped. The journal is rewritten as a snapshot of the game
+ * once compactAfter records have accumulated.
+ */
+class Journal(val file: File, val flushMillis: Long, val compactAfter: Int) {
+  import Journal._
+
+  private var pending = new ByteArrayOutputStream
+  private var records = 0
+
+  // guards the file; taken before the pending lock
+  private val io = new Object
+  private var channel: FileChannel = null
+
+  private val flusher: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+    def newThread(r: Runnable): Thread = {
+      val t = new Thread(r, "hom-journal")
+      t.setDaemon(true)
+      t
+    }
+  })
+  flusher.scheduleWithFixedDelay(new Runnable {
+    def run() {
+      try {
+        flush()
+      } catch {
+        case e: IOException => // keep the records pending, and try again
+      }
+    }
+  }, flushMillis, flushMillis, TimeUnit.MILLISECONDS)
+
+  // kept, so that closing the journal lets go of it
+  private[hom] val hook = new Thread("hom-journal-close") {
+    override def run() {
+      try { flush() } catch { case e: IOException => }
+    }
+  }
+  Runtime.getRuntime.addShutdownHook(hook)
+
+  def pack(uri: String) { append(PackRecord) { _.writeUTF(uri) } }
+
+  def level(n: Int) { append(LevelRecord) { _.writeInt(n) } }
+
+  def move(from: Point, to: Point) {
+    append(MoveRecord) { d => point(from, d); point(to, d) }
+  }
+
+  def turn(at: Point, clockwise: Boolean) {
+    append(TurnRecord) { d => point(at, d); d.writeBoolean(clockwise) }
+  }
+
+  def unlock(n: Int) { append(UnlockRecord) { _.writeInt(n) } }
+
+  def solved(s: Solution) { append(SolvedRecord)(s.write) }
+
+  /** The current board, for instance a level loaded from history. */
+  def board(s: Solution) { append(BoardRecord)(s.write) }
+
+  /** True once enough records have accumulated that the journal should be compacted. */
+  def needsCompaction: Boolean = synchronized { records >= compactAfter }
+
+  /**
+   * Replace the journal by a snapshot of the game.
+   * Pending records are dropped, since the snapshot supersedes them.
+   */
+  def compact(pack: String, unlocked: Set[Int], solved: Iterable[Solution], level: Option[Int], board: Option[Solution]) {
+    val snapshot = new ByteArrayOutputStream
+    val d = new DataOutputStream(snapshot)
+    frame(d, PackRecord) { _.writeUTF(pack) }
+    for (n <- unlocked.toList.sortWith(_ < _)) frame(d, UnlockRecord) { _.writeInt(n) }
+    for (s <- solved) frame(d, SolvedRecord)(s.write)
+    for (n <- level) frame(d, LevelRecord) { _.writeInt(n) }
+    for (s <- board) frame(d, BoardRecord)(s.write)
+    d.flush()
+    io.synchronized {
+      synchronized {
+        pending = new ByteArrayOutputStream
+        records = 0
+      }
+      closeChannel()
+      file.getAbsoluteFile.getParentFile.mkdirs()
+      val tmp = new File(file.getPath + ".tmp")
+      val out = new FileOutputStream(tmp)
+      try {
+        snapshot.writeTo(out)
+        out.getFD.sync()
+      } finally {
+        out.close()
+      }
+      import java.nio.file.{AtomicMoveNotSupportedException, Files, StandardCopyOption}
+      try {
+        Files.move(tmp.toPath, file.toPath, StandardCopyOption.ATOMIC_MOVE)
+      } catch {
+        case e: AtomicMoveNotSupportedException => Files.move(tmp.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING)
+      }
+    }
+  }
+
+  /** Write and force the pending records. */
+  def flush() {
+    io.synchronized {
+      val bytes = synchronized {
+        if (pending.size == 0) null
+        else {
+          val b = pending.toByteArray
+          pending = new ByteArrayOutputStream
+          b
+        }
+      }
+      if (bytes != null) {
+        val ch = openChannel()
+        val buf = ByteBuffer.wrap(bytes)
+        while (buf.hasRemaining) ch.write(buf)
+        ch.force(false)
+      }
+    }
+  }
+
+  /**
+   * Read back the recorded game, if there is a journal.
+   * Anything after the last intact record is cut off, so later appends follow good records.
+   */
+  def recover(): Option[State] = if (!file.exists) None else io.synchronized {
+    closeChannel()
+    val in = new DataInputStream(new java.io.BufferedInputStream(new java.io.FileInputStream(file)))
+    val state = new State
+    var good = 0L
+    var count = 0
+    try {
+      var done = false
+      while (!done) {
+        readRecord(in) match {
+          case Some(bytes) =>
+            replay(state, bytes(0), new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)))
+            good += 4 + bytes.length + 4
+            count += 1
+          case None => done = true
+        }
+      }
+    } finally {
+      in.close()
+    }
+    if (good < file.length) {
+      val raf = new RandomAccessFile(file, "rw")
+      try { raf.setLength(good) } finally { raf.close() }
+    }
+    synchronized { records = count }
+    Some(state)
+  }
+
+  /** Stop the background flush, after writing what is pending. */
+  def close() {
+    try {
+      Runtime.getRuntime.removeShutdownHook(hook)
+    } catch {
+      case e: IllegalStateException => // shutting down already, and the hook is running
+    }
+    flusher.shutdown()
+    flush()
+    io.synchronized { closeChannel() }
+  }
+
+  private def append(kind: Int)(body: DataOutputStream => Unit) {
+    synchronized {
+      frame(new DataOutputStream(pending), kind)(body)
+      records += 1
+    }
+  }
+
+  // length, then type and body, then checksum of type and body
+  private def frame(out: DataOutputStream, kind: Int)(body: DataOutputStream => Unit) {
+    val b = new ByteArrayOutputStream(16)
+    val d = new DataOutputStream(b)
+    d.writeByte(kind)
+    body(d)
+    d.flush()
+    val bytes = b.toByteArray
+    val crc = new CRC32
+    crc.update(bytes)
+    out.writeInt(bytes.length)
+    out.write(bytes)
+    out.writeInt(crc.getValue.toInt)
+    out.flush()
+  }
+
+  // type and body of the next intact record
+  private def readRecord(in: DataInputStream): Option[Array[Byte]] = {
+    try {
+      val length = in.readInt
+      if (length <= 0 || length > (1 << 20)) return None
+      val bytes = new Array[Byte](length)
+      in.readFully(bytes)
+      val crc = new CRC32
+      crc.update(bytes)
+      if (in.readInt != crc.getValue.toInt) None
+      else Some(bytes)
+    } catch {
+      case e: EOFException => None
+    }
+  }
+
+  private def replay(s: State, kind: Int, d: DataInputStream) {
+    kind match {
+      case PackRecord =>
+        s.pack = Some(d.readUTF)
+        s.unlocked = Set.empty
+        s.solved.clear()
+        s.level = None
+        s.board = None
+        s.ops.clear()
+      case LevelRecord =>
+        s.level = Some(d.readInt)
+        s.board = None
+        s.ops.clear()
+      case MoveRecord => s.ops += Move(point(d), point(d))
+      case TurnRecord => s.ops += Turn(point(d), d.readBoolean)
+      case UnlockRecord => s.unlocked += d.readInt
+      case SolvedRecord =>
+        val solution = Solution.read(d)
+        s.solved(solution.level) = solution
+      case BoardRecord =>
+        s.board = Some(Solution.read(d))
+        s.ops.clear()
+      case _ => // a newer kind of record; skip it
+    }
+  }
+
+  private def point(p: Point, d: DataOutputStream) {
+    d.writeShort(p.x)
+    d.writeShort(p.y)
+  }
+
+  private def point(d: DataInputStream) = Point(d.readShort, d.readShort)
+
+  private def openChannel(): FileChannel = {
+    if (channel == null) {
+      file.getAbsoluteFile.getParentFile.mkdirs()
+      channel = new FileOutputStream(file, true).getChannel
+    }
+    channel
+  }
+
+  private def closeChannel() {
+    if (channel != null) {
+      channel.close()
+      channel = null
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package hom
+
+import org.puremvc.java.interfaces.INotification
+import org.puremvc.java.patterns.mediator.Mediator
+
+import notes.HouseNotifications._
+
+/**
+ * Records the progress of the game in the journal: the pack, unlocked and solved levels, and the level
+ * being played with its board. Moves and turns are recorded by the LightBoxMediator as they are made.
+ * A game recovered from the journal is restored as its pack and then its level arrive.
+ */
+class JournalMediator(journal: Journal, pack: GamePackProxy, level: GameLevelProxy, history: HistoryProxy)
+  extends Mediator(JournalMediator.Name, journal) with RichNotifier {
+
+  override val listNotificationInterests = asNames(List(PackLoaded, PackReloaded, LevelLoaded, Trace))
+
+  /** The recovered game, until it has been restored. */
+  private var recovered: Option[Journal.State] = None
+
+  // what the journal already holds, so that each unlock and solution is recorded once
+  private var unlocks: Set[Int] = Set.empty
+  private var solutions: Set[Int] = Set.empty
+
+  /**
+   * Resume the game recorded in the journal, if any, by loading its pack.
+   * Results in false if there is nothing to resume.
+   */
+  def resume(): Boolean = {
+    this.recovered = try {
+      journal.recover().filter(_.pack.isDefined)
+    } catch {
+      case e: java.io.IOException => None
+    }
+    for (s <- this.recovered) {
+      sendNotification(notes.LoadGamePackNotification(Resource(new java.net.URI(s.pack.get)), s.level.getOrElse(-1)))
+    }
+    this.recovered.isDefined
+  }
+
+  override def handleNotification(n: INotification) {
+    notes.HouseNotifications of n match {
+      case Some(PackLoaded) | Some(PackReloaded) => onPackLoaded()
+      case Some(LevelLoaded) => onLevelLoaded(n.getBody.asInstanceOf[GameLevel])
+      case Some(Trace) => onTrace(n.getBody.asInstanceOf[GameState])
+      case _ =>
+    }
+  }
+
+  /** Restore the progress of a recovered game, then start the journal afresh for this pack. */
+  private def onPackLoaded() {
+    val p = pack.gamePack
+    val uri = p.resource.map(_.uri.toString)
+    this.recovered = this.recovered.filter(_.pack == uri)
+    for (s <- this.recovered) {
+      s.unlocked.foreach(p.unlock)
+      s.solved.values.foreach(history.putSolution)
+    }
+    for (u <- uri) compact(u, None)
+  }
+
+  private def onLevelLoaded(g: GameLevel) {
+    this.recovered match {
+      case Some(s) if s.level == Some(g.level) =>
+        this.recovered = None
+        s.restore(g)
+        // the recovered board is where the game starts, not a move that can be undone
+        level.startHistory()
+        sendNotification(LevelUpdate)
+      case _ =>
+        this.recovered = None
+    }
+    pack.gamePack.resource match {
+      case Some(r) if journal.needsCompaction => compact(r.uri.toString, Some(g))
+      case _ =>
+        journal.level(g.level)
+        journal.board(Solution(g))
+    }
+  }
+
+  private def onTrace(state: GameState) {
+    if (state.status.isComplete) {
+      val n = level.gameLevel.level
+      if (history.hasGameLevel(n) && !this.solutions.contains(n)) {
+        journal.solved(history.solution(n))
+        this.solutions += n
+      }
+      for (u <- pack.gamePack.unlockedLevels if !this.unlocks.contains(u)) {
+        journal.unlock(u)
+        this.unlocks += u
+      }
+    }
+  }
+
+  private def compact(uri: String, g: Option[GameLevel]) {
+    val p = pack.gamePack
+    val solved = history.solutions
+    try {
+      journal.compact(uri, p.unlockedLevels, solved, g.map(_.level), g.map(Solution(_)))
+      this.unlocks = p.unlockedLevels
+      this.solutions = solved.map(_.level).toSet
+    } catch {
+      case e: java.io.IOException => sendError("Cannot write journal: " + e.getMessage)
+    }
+  }
+}
+
+object JournalMediator {
+  val Name = "journal-mediator"
+}
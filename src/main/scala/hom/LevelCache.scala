@@ -0,0 +1,173 @@
+package hom
+
+import java.util.concurrent.{Callable, ExecutionException, FutureTask}
+
+import scala.xml.{Elem, Node}
+
+import XMLable._
+
+object LevelTemplate {
+
+  def apply(resource: Resource): LevelTemplate = {
+    require(resource != null)
+    if (resource.extension == Resource.BinaryLevelExt) BinaryFormat.readLevel(resource) else HomReader.readLevel(resource)
+  }
+
+  def fromXML(topElem: Elem): LevelTemplate = {
+
+    def parseGates(node: Node, typeName: String, moveable: Boolean) = (node \\ typeName)(0).descendant.collect {
+      case e: Elem => Gate.fromAttributes(e.label, moveable)(a => e.attribute(a).get.text)
+        .getOrElse(throw new IllegalArgumentException("Unknown gate " + e.label))
+    }
+
+    def parseBound(node: Node): Bound = {
+      val myBoundsNode = (node \\ "bounds")(0)
+      val u: UnXMLable[Bound] = myBoundsNode
+      u.fromXML
+    }
+
+    val trimTop = scala.xml.Utility.trim(topElem)
+    val bounds = parseBound((trimTop \\ "bounds")(0))
+
+    val fixed_gates = parseGates(trimTop, "fixedGates", false)
+    val moveable_gates = parseGates(trimTop, "moveableGates", true)
+
+    val description = (trimTop \\ "description")(0).child.foldLeft("")(_ + _.toString)
+    new LevelTemplate(description, bounds, fixed_gates, moveable_gates)
+  }
+}
+
+/**
+ * A parsed game level, from which any number of playable GameLevels are created.
+ * The template gates are never handed out, so the template is effectively immutable:
+ * fixed gates are shared by every instance, while moveable gates (and wormholes, which know their twin)
+ * are copied on instantiation.
+ * A template with wormholes that cannot be paired is refused with a BadLevelException.
+ */
+class LevelTemplate(val description: String, val bounds: Bound, fixed: List[Gate], moveable: List[Gate]) {
+
+  // a level that would fail in play fails to load instead
+  private val problems = GameLevel.wormHoleProblems(fixed, moveable)
+  if (!problems.isEmpty) throw new BadLevelException(problems)
+
+  /** A rough guess at the memory held by this template, for the cache budget. */
+  val estimatedBytes: Long = 256L + 2L * description.length + 64L * (fixed.length + moveable.length)
+
+  /** A new GameLevel for level n, with the initial gate positions. */
+  def instantiate(n: Int): GameLevel = {
+    val fixed_gates = fixed.map(g => if (g.isInstanceOf[WormHole]) Gate.copy(g) else g)
+    val moveable_gates = moveable.map(Gate.copy)
+    GameLevel.pairWormHoles(fixed_gates, moveable_gates)
+    new GameLevel(n, description, bounds, fixed_gates, moveable_gates)
+  }
+}
+
+object LevelCache {
+  val DefaultMaxEntries = 64
+  val DefaultMaxBytes = 8L * 1024 * 1024
+
+  /** A cache sized by the system properties hom.levelCache.entries and hom.levelCache.bytes. */
+  def fromProperties: LevelCache = {
+    def prop[A](name: String, default: A)(f: String => A): A = sys.props.get(name) match {
+      case Some(v) => try { f(v) } catch { case e: NumberFormatException => default }
+      case None => default
+    }
+    new LevelCache(prop("hom.levelCache.entries", DefaultMaxEntries)(_.toInt), prop("hom.levelCache.bytes", DefaultMaxBytes)(_.toLong))
+  }
+}
+
+/**
+ * Parsed level templates, keyed by resource URI and modification time.
+ * The least recently used templates are evicted when either the entry count or the byte budget is exceeded.
+ * Concurrent requests for the same level share one parse.
+ */
+class LevelCache(val maxEntries: Int, val maxBytes: Long) {
+  require(maxEntries > 0)
+
+  private type Key = (String, Long)
+
+  // access order, so iteration starts at the least recently used
+  private val entries = new java.util.LinkedHashMap[Key, FutureTask[LevelTemplate]](16, 0.75f, true)
+
+  /** The template for the resource, parsing it if it is not cached. */
+  def template(resource: Resource): LevelTemplate = template(resource.uri.toString, resource.lastModified)(LevelTemplate(resource))
+
+  /** The template cached under the given URI and modification time, or else the result of parse. */
+  def template(uri: String, modified: Long)(parse: => LevelTemplate): LevelTemplate = {
+    val key = (uri, modified)
+    var mine = false
+    val task = synchronized {
+      val cached = this.entries.get(key)
+      if (cached != null) {
+        cached
+      } else {
+        mine = true
+        val created = new FutureTask[LevelTemplate](new Callable[LevelTemplate] {
+          def call(): LevelTemplate = parse
+        })
+        this.entries.put(key, created)
+        created
+      }
+    }
+    if (mine) {
+      task.run()
+      synchronized { evict() }
+    }
+    try {
+      task.get
+    } catch {
+      case e: ExecutionException =>
+        synchronized { if (this.entries.get(key) eq task) this.entries.remove(key) }
+        throw e.getCause
+    }
+  }
+
+  /** A new game level n from the resource. */
+  def level(resource: Resource, n: Int): GameLevel = template(resource).instantiate(n)
+
+  def size: Int = synchronized { this.entries.size }
+
+  def clear() {
+    synchronized { this.entries.clear() }
+  }
+
+  /**
+   * Forget the templates of the given URI, and of the levels of a binary pack at that URI, whatever their time.
+   * Needed when a file changes within the resolution of its modification time.
+   */
+  def invalidate(uri: String) {
+    synchronized {
+      val it = this.entries.keySet.iterator
+      while (it.hasNext) {
+        val k = it.next._1
+        if (k == uri || k.startsWith(uri + "#")) it.remove()
+      }
+    }
+  }
+
+  // evict least recently used (completed) templates until within budget; the newest entry is always kept
+  private def evict() {
+    var bytes = 0L
+    val it = this.entries.values.iterator
+    while (it.hasNext) {
+      val t = it.next
+      if (t.isDone && !t.isCancelled) bytes += templateBytes(t)
+    }
+    val lru = this.entries.entrySet.iterator
+    while (this.entries.size > 1 && (this.entries.size > maxEntries || bytes > maxBytes) && lru.hasNext) {
+      val e = lru.next
+      if (e.getValue.isDone) {
+        bytes -= templateBytes(e.getValue)
+        lru.remove()
+      }
+    }
+  }
+
+  private def templateBytes(t: FutureTask[LevelTemplate]): Long = {
+    try {
+      t.get.estimatedBytes
+    } catch {
+      case e: ExecutionException => 0L
+    }
+  }
+}
@@ -82,6 +82,14 @@ class LightBox extends Panel {
 
   var renderables: List[Renderable] = Nil
 
+  /** The rays predicted for the board if the dragged gate were dropped on the hover cell. */
+  var preview: List[Segment] = Nil
+  val previewComposite = java.awt.AlphaComposite.getInstance(java.awt.AlphaComposite.SRC_OVER, 0.45f)
+
+  /** Detectors lit for each cell the selected gate could be moved to, as far as they are known, out of heatTotal. */
+  var heat: Map[Point, Int] = Map.empty
+  var heatTotal: Int = 0
+
   listenTo(mouse.clicks, mouse.moves, mouse.wheel, keys)
 
   reactions += {
@@ -128,6 +136,8 @@ class LightBox extends Panel {
       val newHoverPoint = scaledPoint(e.point.getX, e.point.getY)
       if (newHoverPoint != this.hoverPoint) {
         this.hoverPoint = newHoverPoint
+        this.preview = Nil
+        publish(HoverEvent(this.dragStart, newHoverPoint))
         repaint()
       }
     }
@@ -156,6 +166,7 @@ class LightBox extends Panel {
           }
       }
       this.isDragging = false
+      this.preview = Nil
       repaint()
     } else if (this.isEmptyGesture) {
       this.isEmptyGesture = false
@@ -178,9 +189,8 @@ class LightBox extends Panel {
             case WHEEL_UNIT_SCROLL => (w.getWheelRotation, w.getScrollAmount)
             case WHEEL_BLOCK_SCROLL => (w.getWheelRotation, 1)
           }
-          val direction = if (rotation < 0) 0 else 1
-          val clicks = if (rotation < 0) -rotation else rotation
-          for (i <- 0 until clicks) publish(ClickEvent(clickPoint, direction))
+          // one event for the whole scroll, however many units
+          if (rotation != 0) publish(TurnEvent(clickPoint, rotation))
         case _ =>
           // scrolling over a fixed gate does nothing
       }
@@ -246,12 +256,12 @@ class LightBox extends Panel {
   }
 
   private def highlightNextMoveableGate() {
-    currentSelection = nextMoveableGate(currentSelection)
+    select(nextMoveableGate(currentSelection))
     repaint()
   }
 
   private def highlightPreviousMoveableGate() {
-    currentSelection = previousMoveableGate(currentSelection)
+    select(previousMoveableGate(currentSelection))
     repaint()
   }
 
@@ -272,11 +282,14 @@ class LightBox extends Panel {
   }
 
   def selectAt(p: Point) {
-    this.currentSelection = this.gates.find(x => x.position == p)
+    select(this.gates.find(x => x.position == p))
   }
 
+  /** Select g, and tell listeners if the selection is now somewhere else. */
   def select(g: Option[Gate]) {
+    val moved = g.map(_.position) != this.currentSelection.map(_.position)
     this.currentSelection = g
+    if (moved) publish(GateSelected(g))
   }
 
   var offscreen = new BufferedImage(DefaultBoxSide, DefaultBoxSide, BufferedImage.TYPE_INT_RGB)
@@ -325,8 +338,21 @@ class LightBox extends Panel {
     // Draw the gates. Notice that we draw them on-top-of the saber rays
     //g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON)
 
+    // Shade the cells of the heatmap under the rays and gates
+    if (!this.heat.isEmpty && this.heatTotal > 0) {
+      for ((p, n) <- this.heat) {
+        g.setColor(if (n == this.heatTotal) heatCompleteColor else new Color(heatColor.getRed, heatColor.getGreen, heatColor.getBlue, 20 + 140 * n / this.heatTotal))
+        g.fillRect(p.x * hscale + 1, p.y * vscale + 1, hscale - 1, vscale - 1)
+      }
+    }
+
     for (r <- this.renderables) r.render(g)
 
+    // Draw the rays predicted for the drag faintly over the current ones
+    if (this.isDragging && !this.preview.isEmpty) {
+      new RayRenderer(this.preview, previewComposite, normStroke).render(g)
+    }
+
     // Draw the selection, but not if it's the start of a drag
     if (this.currentSelection.isDefined && !(this.isDragging && this.currentSelection.get.position == this.dragStart)) {
       val selectionColor = new Color(200, 200, 200)
@@ -383,6 +409,31 @@ class LightBox extends Panel {
     this.renderables = todo.result()
   }
 
+  /** Show the rays predicted for the drag in progress; ignored once the drag is over. */
+  def setPreview(segments: List[Segment]) {
+    if (this.isDragging) {
+      this.preview = segments
+      repaint()
+    }
+  }
+
+  val heatColor = new Color(200, 120, 0)
+  val heatCompleteColor = new Color(60, 160, 60, 160)
+
+  /** Add the scores of some cells to the heatmap, out of total detectors. */
+  def addHeat(cells: Seq[(Point, Int)], total: Int) {
+    this.heat ++= cells
+    this.heatTotal = total
+    repaint()
+  }
+
+  def clearHeat() {
+    if (!this.heat.isEmpty) {
+      this.heat = Map.empty
+      repaint()
+    }
+  }
+
   def setGridBounds(b: Bound) {
     this.gridBounds = b
     calculateScale()
@@ -452,12 +503,12 @@ class LightBox extends Panel {
     }
   }
 
-  class RayRenderer(segments: List[Segment]) extends Renderable {
+  class RayRenderer(segments: List[Segment], composite: Composite = AddComposite, stroke: BasicStroke = thinStroke) extends Renderable {
     override def render(g: Graphics2D) {
       val oldComposite = g.getComposite
       try {
-        g.setComposite(AddComposite)
-        g.setStroke(thinStroke)
+        g.setComposite(composite)
+        g.setStroke(stroke)
         this.segments.foreach(line => {
           g.setColor(line.color.color)
           g.drawLine(hscale/2 + line.start.x * hscale,
@@ -712,6 +763,15 @@ case class DragEvent(from: Point, to: Point) extends Event
 
 case class ClickEvent(where: Point, button: Int) extends Event
 
+/** The selection has moved to another gate, or to none. */
+case class GateSelected(gate: Option[Gate]) extends Event
+
+/** While dragging the gate at from, the pointer has moved over a new cell. */
+case class HoverEvent(from: Point, to: Point) extends Event
+
+/** Turn the gate at where by clicks eighths, clockwise if positive. */
+case class TurnEvent(where: Point, clicks: Int) extends Event
+
 import java.awt.{CompositeContext, RenderingHints}
 import java.awt.image.{ColorModel, ComponentColorModel, Raster, WritableRaster, IndexColorModel, PackedColorModel}
 
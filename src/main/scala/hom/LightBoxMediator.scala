@@ -18,6 +18,7 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
 
   val levelProxy: GameLevelProxy
   val packProxy: GamePackProxy
+  val journal: Journal
 
   override val listNotificationInterests = asNames(List(LevelLoaded, Trace, Help))
 
@@ -31,6 +32,8 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
     "<dt>SPACE (ENTER)</dt><dd>Rotate the selected element Counter-clockwise (Clockwise)<br/><br/></dd>" +
     "<dt>UP,DOWN,LEFT,RIGHT</dt><dd>Move the selected element<br/><br/></dd>" +
     "<dt>PAGE_UP (PAGE_DOWN)</dt><dd>Go to next (previous) level<br/><br/></dd>" +
+    "<dt>CTRL-Z (CTRL-Y)</dt><dd>Undo (redo) a move or turn<br/><br/></dd>" +
+    "<dt>h (H)</dt><dd>Show or hide how many detectors the selected gate would light from each cell (in its best orientation)<br/><br/></dd>" +
     "</dl></html>"
 
   listenTo(ui, ui.keys, ui.mouse.clicks)
@@ -45,13 +48,19 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
     case KeyPressed(_, Key.Right, _, _) => moveRight()
     case KeyPressed(_, Key.PageUp, _, _) => previousLevel()
     case KeyPressed(_, Key.PageDown, _, _) => nextLevel()
+    case KeyPressed(_, Key.Z, m, _) if (m & Key.Modifier.Control) != 0 => history(if ((m & Key.Modifier.Shift) != 0) Redo else Undo)
+    case KeyPressed(_, Key.Y, m, _) if (m & Key.Modifier.Control) != 0 => history(Redo)
+    case KeyPressed(_, Key.H, m, _) => toggleHeatmap((m & Key.Modifier.Shift) != 0)
     case DragEvent(from, to) => handleDrag(from, to)
+    case HoverEvent(from, to) => handleHover(from, to)
+    case GateSelected(g) => selected(g)
     case ClickEvent(where, op) => handleClick(where, op)
+    case TurnEvent(where, clicks) => batch.turn(where, clicks)
     //case x => println("Unreacted event " + x)
   }
 
   override def handleNotification(n: INotification) {
-    notes.HouseNotifications findName n.getName match {
+    notes.HouseNotifications of n match {
       case Some(LevelLoaded) => onLevelLoaded(n.getBody.asInstanceOf[GameLevel])
       case Some(Trace) => onTrace(n.getBody.asInstanceOf[GameState])
       case Some(Help) => Dialog.showMessage(ui, helpText)
@@ -64,13 +73,14 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
    * When a level is loaded, select the first moveable gate.
    */
   private def onLevelLoaded(g: GameLevel) {
-    this.ui.currentSelection = if (g.moveable_gates.length > 0) Some(g.moveable_gates(0)) else None
+    batch.clear()
+    this.ui.select(if (g.moveable_gates.length > 0) Some(g.moveable_gates(0)) else None)
   }
 
   private def onTrace(state: GameState) {
     ui.setGridBounds(this.levelProxy.gameLevel.bounds)
     ui.setTrace(state.segments, state.gates)
-    ui.completed = state.status.score == state.status.total
+    ui.completed = state.status.isComplete
     if (this.selectionContinuity._1.isDefined) {
       ui.selectAt(this.selectionContinuity._1.get, this.selectionContinuity._2.get)
       this.selectionContinuity = (None, None)
@@ -78,9 +88,40 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
     if (!this.ui.currentSelection.isDefined) {
       this.ui.select(state.gates.find(x => x.isInstanceOf[Moveable]))
     }
+    // have the turns of the selection ready, unless they already are for this board
+    for (s <- this.ui.currentSelection) this.levelProxy.traceRotations(s.position)
+    // the board has changed, so the heatmap has too
+    refreshHeatmap()
     ui.repaint()
   }
 
+  private def selected(g: Option[Gate]) {
+    for (s <- g) this.levelProxy.traceRotations(s.position)
+    refreshHeatmap()
+  }
+
+  /** Whether the heatmap is shown, and if so whether it scores every orientation. */
+  private var heatmapping: Option[Boolean] = None
+
+  /** The scoring of the heatmap, while it is running. */
+  private var mapping: Option[java.util.concurrent.Future[_]] = None
+
+  private def toggleHeatmap(everyOrientation: Boolean) {
+    this.heatmapping = if (this.heatmapping == Some(everyOrientation)) None else Some(everyOrientation)
+    refreshHeatmap()
+  }
+
+  /** Score the cells for the selected gate again, abandoning any scoring under way. */
+  private def refreshHeatmap() {
+    this.mapping.foreach(_.cancel(true))
+    this.mapping = None
+    ui.clearHeat()
+    for (every <- this.heatmapping; s <- this.ui.currentSelection if s.isInstanceOf[Moveable] && this.levelProxy.isLoaded) {
+      val total = this.levelProxy.gameLevel.gates.count(_.isInstanceOf[Detector])
+      this.mapping = Some(this.levelProxy.heatmap(s.position, every) { cells => ui.addHeat(cells, total) })
+    }
+  }
+
   /**
    * Anticipate that after the next update (trace),
    * the current selection should be at p and be similar
@@ -90,67 +131,61 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
     this.selectionContinuity = (g, Some(p))
   }
 
+  /** Turns and moves made in quick succession are applied together, with one update. */
+  private val batch = new InputBatch(InputBatch.windowFromProperties)(applyInput)
+
+  private def applyInput(op: InputBatch.Op) {
+    val g = this.levelProxy.gameLevel
+    op match {
+      case InputBatch.Turn(p, clicks) =>
+        val n = InputBatch.netTurns(clicks)
+        var turned = false
+        for (i <- 0 until n.abs) {
+          if (if (n > 0) g.turnCW(p) else g.turnCCW(p)) {
+            journal.turn(p, n > 0)
+            turned = true
+          }
+        }
+        if (turned) {
+          continuity(this.ui.currentSelection, p);
+          sendNotification(LevelUpdate.toString, null, null)
+        }
+      case InputBatch.Move(p, steps) =>
+        val to = InputBatch.walk(g, p, steps)
+        if (to != p && g.moveTo(p, to)) {
+          journal.move(p, to)
+          continuity(this.ui.currentSelection, to);
+          sendNotification(LevelUpdate.toString, null, null)
+        }
+    }
+  }
+
   /** CounterClockwise */
   private def rotateSelectedGate() {
-    if (this.ui.currentSelection.isDefined) {
-      val p: Point = this.ui.currentSelection.get.position
-      if (this.levelProxy.gameLevel.turnCCW(p)) {
-        continuity(this.ui.currentSelection, p);
-        sendNotification(LevelUpdate.toString, null, null)
-      }
-    }
+    for (s <- this.ui.currentSelection) batch.turn(s.position, -1)
   }
   /** Otherwise means Clockwise */
   private def rotateOtherwiseSelectedGate() {
-    if (this.ui.currentSelection.isDefined) {
-      val p: Point = this.ui.currentSelection.get.position
-      if (this.levelProxy.gameLevel.turnCW(p)) {
-        continuity(this.ui.currentSelection, p);
-        sendNotification(LevelUpdate.toString, null, null)
-      }
-    }
+    for (s <- this.ui.currentSelection) batch.turn(s.position, 1)
   }
   private def moveUp() {
-    if (this.ui.currentSelection.isDefined) {
-      val p: Point = this.ui.currentSelection.get.position
-      if (this.levelProxy.gameLevel.moveUp(p)) {
-        continuity(this.ui.currentSelection, p.moveUp);
-        sendNotification(LevelUpdate.toString, null, null)
-      }
-    }
+    for (s <- this.ui.currentSelection) batch.move(s.position, 0, -1)
   }
   private def moveDown() {
-    if (this.ui.currentSelection.isDefined) {
-      val p: Point = this.ui.currentSelection.get.position
-      if (this.levelProxy.gameLevel.moveDown(p)) {
-        continuity(this.ui.currentSelection, p.moveDown);
-        sendNotification(LevelUpdate.toString, null, null)
-      }
-    }
+    for (s <- this.ui.currentSelection) batch.move(s.position, 0, 1)
   }
   private def moveLeft() {
-    if (this.ui.currentSelection.isDefined) {
-      val p: Point = this.ui.currentSelection.get.position
-      if (this.levelProxy.gameLevel.moveLeft(p)) {
-        continuity(this.ui.currentSelection, p.moveLeft);
-        sendNotification(LevelUpdate.toString, null, null)
-      }
-    }
+    for (s <- this.ui.currentSelection) batch.move(s.position, -1, 0)
   }
   private def moveRight() {
-    if (this.ui.currentSelection.isDefined) {
-      val p: Point = this.ui.currentSelection.get.position
-      if (this.levelProxy.gameLevel.moveRight(p)) {
-        continuity(this.ui.currentSelection, p.moveRight);
-        sendNotification(LevelUpdate.toString, null, null)
-      }
-    }
+    for (s <- this.ui.currentSelection) batch.move(s.position, 1, 0)
   }
 
   private def previousLevel() {
-    val n: Int =  this.levelProxy.gameLevel.level - 1
-    if (n >= 0) {
-      sendNotification(LoadLevel.toString, n, null)
+    batch.flush()
+    // from the level asked for last, which may still be loading
+    for (current <- this.levelProxy.requestedLevel if current > 0) {
+      sendNotification(LoadLevel.toString, current - 1, null)
     }
   }
 
@@ -160,11 +195,38 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
    * The current level need not be in a completed state.
    */
   private def nextLevel() {
+    batch.flush()
     sendNotification(LoadLevel.toString, -1, null)
   }
 
+  /** Undo or redo, after applying what is pending so that it is what is undone. */
+  private def history(n: notes.HouseNotifications.HouseNotificationType) {
+    batch.flush()
+    sendNotification(n.toString, null, null)
+  }
+
+  /** The speculative trace for the drag preview, while one is running. */
+  private var previewing: Option[java.util.concurrent.Future[_]] = None
+
+  /** Predict the rays for dropping the dragged gate here, abandoning the prediction for the last cell. */
+  private def handleHover(from: Point, to: Point) {
+    cancelPreview()
+    val g = this.levelProxy.gameLevel
+    if (to != from && g.bounds.contains(to) && !g.occupied(to)) {
+      this.previewing = Some(this.levelProxy.speculate(_.moveTo(from, to)) { s => ui.setPreview(s.segments) })
+    }
+  }
+
+  private def cancelPreview() {
+    this.previewing.foreach(_.cancel(true))
+    this.previewing = None
+  }
+
   private def handleDrag(from: Point, to: Point) {
+    cancelPreview()
+    batch.flush()
     if (this.levelProxy.gameLevel.moveTo(from, to)) {
+      journal.move(from, to)
       continuity(this.ui.currentSelection, to)
       sendNotification(LevelUpdate.toString, null, null)
     }
@@ -174,24 +236,13 @@ abstract class LightBoxMediator (c: Object) extends Mediator("ui-mediator", c) w
    * Mouse click means rotate gate or next/previous level.
    */
   private def handleClick(where: Point, op: Int) {
-    if (op == 0) {
-      if (this.ui.occupied(where)) {
-        if (this.levelProxy.gameLevel.turnCCW(where)) {
-          continuity(this.ui.currentSelection, where);
-          sendNotification(LevelUpdate.toString, null, null)
-        }
-      } else {
-        previousLevel()
-      }
+    if (this.ui.occupied(where)) {
+      if (op == 0) batch.turn(where, -1)
+      else if (op == 1) batch.turn(where, 1)
+    } else if (op == 0) {
+      previousLevel()
     } else if (op == 1) {
-      if (this.ui.occupied(where)) {
-        if (this.levelProxy.gameLevel.turnCW(where)) {
-          continuity(this.ui.currentSelection, where);
-          sendNotification(LevelUpdate.toString, null, null)
-        }
-      } else {
-        nextLevel()
-      }
+      nextLevel()
     }
   }
 }
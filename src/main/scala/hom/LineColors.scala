@@ -5,6 +5,8 @@ import java.awt.Color
 
 /**
  * Light colors, supporting combinations of RGB.
+ * Each color is identified by its RGB mask (red 1, green 2, blue 4), which indexes a table of the colors,
+ * so that mixing colors is an OR and a lookup.
  */
 object LineColors extends Enumeration { 
   val Red = LineColor("Red", true, false, false)
@@ -24,22 +26,40 @@ object LineColors extends Enumeration {
     /** The corresponding java.awt.Color value. */
     val color = new Color(v(r),v(g),v(b))
 
-    def components: List[LineColor] = {
-      var result: List[LineColor] = Nil
-      if (r) result = Red :: result
-      if (g) result = Green :: result
-      if (b) result = Blue :: result
-      result
-    }
+    /** The RGB mask of this color. */
+    val rgb: Int = (if (r) 1 else 0) | (if (g) 2 else 0) | (if (b) 4 else 0)
+
+    /** The primary colors in this one, blue first; the list is shared, not built per call. */
+    def components: List[LineColor] = componentsByRGB(rgb)
 
-    def +(other: LineColor) = withRGB(this.r || other.r, this.g || other.g, this.b || other.b)
+    def +(other: LineColor) = byRGB(this.rgb | other.rgb)
 
     private def v(on: Boolean) = if (on) 255 else 0
   }
 
+  private val byRGB: Array[LineColor] = {
+    val a = new Array[LineColor](8)
+    for (c <- List(Red, Green, Blue, Yellow, Magenta, Cyan, White, Black)) a(c.rgb) = c
+    a
+  }
+
+  private val componentsByRGB: Array[List[LineColor]] =
+    Array.tabulate(8) { m => List(Blue, Green, Red).filter(c => (m & c.rgb) != 0) }
+
   def colors = values.toList.map(_.asInstanceOf[LineColor])
-  
-  def withRGB(r: Boolean, g: Boolean, b: Boolean): LineColor = colors.find(c => c.r == r && c.g == g && c.b == b).get
 
-  def withNameIgnoreCase(s: String): LineColor = values.find(_.toString.equalsIgnoreCase(s)).get.asInstanceOf[LineColor]
+  def withRGB(r: Boolean, g: Boolean, b: Boolean): LineColor = byRGB((if (r) 1 else 0) | (if (g) 2 else 0) | (if (b) 4 else 0))
+
+  /** The color with the given RGB mask, of which only the low three bits count. */
+  def withRGB(mask: Int): LineColor = byRGB(mask & 7)
+
+  private lazy val byLowerName: Map[String, LineColor] = colors.map(c => (c.toString.toLowerCase, c)).toMap
+
+  def withNameIgnoreCase(s: String): LineColor = byLowerName.get(s) match {
+    case Some(c) => c
+    case None => byLowerName.get(s.toLowerCase) match {
+      case Some(c) => c
+      case None => throw new NoSuchElementException(s)
+    }
+  }
 }
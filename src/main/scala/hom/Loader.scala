@@ -0,0 +1,140 @@
+package hom
+
+import java.util.concurrent.{Callable, ConcurrentLinkedQueue, ExecutionException, ExecutorService, Executors, Future, FutureTask, ThreadFactory}
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+
+import scala.swing.Swing
+
+import com.google.inject.Singleton
+
+/**
+ * Runs game file loading off the EDT.
+ * Work is done on a single worker, so loads complete in the order requested;
+ * results are handed back on the EDT, where proxies are updated and notifications sent.
+ * Speculative work, such as parsing levels ahead of time, runs on a low priority prefetch thread.
+ * Speculative traces, whose results are shown if they arrive in time, run on their own thread.
+ * Work that splits into many independent pieces, such as scoring every cell of the board, runs on a pool.
+ */
+@Singleton
+class Loader {
+
+  private val worker: ExecutorService = Executors.newSingleThreadExecutor(daemon("hom-loader", Thread.NORM_PRIORITY))
+
+  private val prefetcher: ExecutorService = Executors.newSingleThreadExecutor(daemon("hom-prefetch", Thread.MIN_PRIORITY))
+
+  private val speculator: ExecutorService = Executors.newSingleThreadExecutor(daemon("hom-speculate", Thread.NORM_PRIORITY - 1))
+
+  private val fanner: ExecutorService =
+    Executors.newFixedThreadPool(Runtime.getRuntime.availableProcessors, daemon("hom-fanout", Thread.NORM_PRIORITY - 1))
+
+  /**
+   * Do some work on the worker, then continue on the EDT with the result.
+   * If the work fails, the failure is handed to the EDT instead.
+   */
+  def apply[A](work: => A)(done: A => Unit)(failed: Throwable => Unit) {
+    worker.execute(new Runnable {
+      def run() {
+        var result: Option[A] = None
+        try {
+          result = Some(work)
+        } catch {
+          case t: Throwable => Swing.onEDT(failed(t))
+        }
+        if (result.isDefined) Swing.onEDT(done(result.get))
+      }
+    })
+  }
+
+  /**
+   * Do some speculative work, such as parsing a level that may be played next, at low priority.
+   * Failures are ignored, since nobody asked for the result.
+   */
+  def prefetch(work: => Unit) {
+    prefetcher.execute(new Runnable {
+      def run() {
+        try {
+          work
+        } catch {
+          case e: Exception => // whoever needs it will try again and report the problem
+        }
+      }
+    })
+  }
+
+  /**
+   * Do work whose result may be wanted soon, such as tracing a board the player is about to choose,
+   * then continue on the EDT with the result. Cancelling the returned future interrupts the work,
+   * and the result of cancelled work is never handed on. Failures are ignored.
+   */
+  def speculate[A](work: => A)(show: A => Unit): Future[_] = {
+    val task = new FutureTask[A](new Callable[A] { def call() = work }) {
+      override def done() {
+        if (!isCancelled) {
+          try {
+            val a = get
+            Swing.onEDT { if (!isCancelled) show(a) }
+          } catch {
+            case e: ExecutionException => // nobody is waiting for it
+            case e: java.util.concurrent.CancellationException =>
+          }
+        }
+      }
+    }
+    speculator.execute(task)
+    task
+  }
+
+  /**
+   * Do a piece of work for each input, in parallel, and hand the results on to the EDT as they complete.
+   * Results that complete together are shown together, in no particular order.
+   * Cancelling the returned future interrupts the pieces still running, and nothing more is shown.
+   * The future is done when every piece is. Pieces that fail are left out.
+   */
+  def fanOut[A, B](inputs: Seq[A])(work: A => B)(show: Seq[(A, B)] => Unit): Future[_] = {
+    val results = new ConcurrentLinkedQueue[(A, B)]
+    val draining = new AtomicBoolean
+    val left = new AtomicInteger(inputs.length)
+    var pieces: Seq[FutureTask[B]] = Nil
+    // never run by an executor: run by the last piece to finish, to mark the whole done
+    val whole = new FutureTask[Unit](new Runnable { def run() {} }, ()) {
+      override def done() {
+        if (isCancelled) pieces.foreach(_.cancel(true))
+      }
+    }
+    def drain() {
+      if (draining.compareAndSet(false, true)) Swing.onEDT {
+        draining.set(false)
+        val batch = Iterator.continually(results.poll()).takeWhile(_ != null).toList
+        if (!whole.isCancelled && !batch.isEmpty) show(batch)
+      }
+    }
+    pieces = inputs.toList.map { a =>
+      new FutureTask[B](new Callable[B] { def call() = work(a) }) {
+        override def done() {
+          if (!isCancelled && !whole.isCancelled) {
+            try {
+              results.add((a, get))
+              drain()
+            } catch {
+              case e: ExecutionException => // leave it out
+              case e: java.util.concurrent.CancellationException =>
+            }
+          }
+          if (left.decrementAndGet() == 0) whole.run()
+        }
+      }
+    }
+    if (pieces.isEmpty) whole.run()
+    else pieces.foreach(fanner.execute)
+    whole
+  }
+
+  private def daemon(name: String, priority: Int) = new ThreadFactory {
+    def newThread(r: Runnable): Thread = {
+      val t = new Thread(r, name)
+      t.setDaemon(true)
+      t.setPriority(priority)
+      t
+    }
+  }
+}
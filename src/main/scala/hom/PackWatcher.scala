@@ -0,0 +1,58 @@
+package hom
+
+import java.io.File
+import java.nio.file.{ClosedWatchServiceException, Path, WatchService}
+import java.nio.file.StandardWatchEventKinds.{ENTRY_CREATE, ENTRY_MODIFY, OVERFLOW}
+import java.util.concurrent.TimeUnit
+
+import scala.collection.JavaConversions._
+
+object PackWatcher {
+
+  /** How long the directory must be quiet before the names changed are handed on, in milliseconds. */
+  val DefaultQuiet = 200L
+
+  /** Whether the system property hom.watch asks for pack directories to be watched. */
+  def enabled: Boolean = sys.props.get("hom.watch").exists(_.equalsIgnoreCase("true"))
+}
+
+/**
+ * Watches the directory of a pack, so that files edited while the game is running are picked up.
+ * Editors save a file in a burst of events, sometimes by way of a temporary file, so the names
+ * are collected until the directory has been quiet for a while, then handed to changed together.
+ * changed is called on the watcher's own thread.
+ */
+class PackWatcher(val dir: File, quiet: Long)(changed: Set[String] => Unit) {
+
+  private val service: WatchService = dir.toPath.getFileSystem.newWatchService
+
+  dir.toPath.register(service, ENTRY_CREATE, ENTRY_MODIFY)
+
+  private val thread = new Thread(new Runnable { def run() { watch() } }, "hom-watch")
+  thread.setDaemon(true)
+  thread.start()
+
+  private def watch() {
+    var pending = Set.empty[String]
+    try {
+      while (true) {
+        val key = if (pending.isEmpty) service.take() else service.poll(quiet, TimeUnit.MILLISECONDS)
+        if (key == null) {
+          changed(pending)
+          pending = Set.empty
+        } else {
+          for (e <- key.pollEvents if e.kind != OVERFLOW) pending += e.context.asInstanceOf[Path].toString
+          key.reset()
+        }
+      }
+    } catch {
+      case e: InterruptedException =>
+      case e: ClosedWatchServiceException =>
+    }
+  }
+
+  /** Stop watching; names not yet handed on are dropped. */
+  def close() {
+    service.close()
+  }
+}
@@ -38,16 +38,7 @@ case class Segment(val start: Point, val end: Point, val color: LineColor) {
 }
 
 case class Ray(val start: Point, val direction: Direction, val color: LineColor) {
-  def nextPoint(p: Point) = this.direction match {
-    case North => Point(p.x, p.y - 1)
-    case Northeast => Point(p.x + 1, p.y - 1)
-    case East => Point(p.x + 1, p.y)
-    case Southeast => Point(p.x + 1, p.y + 1)
-    case South => Point(p.x, p.y + 1)
-    case Southwest => Point(p.x - 1, p.y + 1)
-    case West => Point(p.x - 1, p.y)
-    case Northwest => Point(p.x - 1, p.y - 1)
-  }
+  def nextPoint(p: Point) = Point(p.x + this.direction.dx, p.y + this.direction.dy)
   override def toString = "Ray " + this.start + " in " + this.direction
 }
 
@@ -1,8 +1,10 @@
 
 package hom
 
-import java.io.File
+import java.io.{BufferedInputStream, File, FileInputStream, FileNotFoundException, InputStream}
 import java.net.URI
+import java.util.concurrent.ConcurrentHashMap
+import java.util.jar.JarFile
 
 import scala.util.Properties
 import scala.xml.{Elem, XML}
@@ -12,6 +14,17 @@ object Resource {
   val homDir: File = new File(new File(Properties.userHome), ".hom")
   val usrDir: File = new File(Properties.userDir)
 
+  val LevelExt = ".hom"
+  val PackExt = ".homp"
+  val BinaryLevelExt = ".homb"
+  val BinaryPackExt = ".hompb"
+
+  /** The extension of a file name, from the first dot, or the empty string. */
+  def extensionOf(name: String): String = {
+    val i = name.indexOf('.')
+    if (i < 0) "" else name.substring(i)
+  }
+
   private val SchemeFile = "file"
   private val SchemeJar = "jar"
   private val JarSeparator = "!/"
@@ -21,9 +34,14 @@ object Resource {
    * Go find a game resource file.
    * First check the name as a resource on the classpath.
    * Then check ${user.dir}. Then check ${user.home}/.hom.
+   * The answer is remembered, and looked for again only if it was a file that has since changed.
    */
   def apply(r: String): Resource = {
     require(r != null)
+    cached("", r)(find(r))
+  }
+
+  private def find(r: String): Resource = {
     val where: java.net.URL = getClass.getClassLoader.getResource(r);
     if (where != null) {
       forURI(where.toURI)
@@ -38,7 +56,9 @@ object Resource {
    * constructs a game level resource.
    * But an arbitrary resource can be returned, such as "http://yahoo.com".
    */
-  def apply(base: Resource, r: String): Resource = {
+  def apply(base: Resource, r: String): Resource = cached(base.uri.toString, r)(resolve(base, r))
+
+  private def resolve(base: Resource, r: String): Resource = {
     if (base.uri.getScheme == SchemeJar) {
       forJarRelative(base, r)
     } else if (base.uri.isOpaque) {
@@ -50,14 +70,43 @@ object Resource {
 
   def apply(f: File): Resource = new FileResource(f)
 
+  /** The resource at a URI, such as one recorded from Resource.uri. */
+  def apply(uri: URI): Resource = forURI(uri)
+
   private def forURI(uri: URI): Resource = {
-    if (uri.getScheme == "file") {
+    if (uri.getScheme == SchemeFile) {
       new FileResource(uri)
+    } else if (uri.getScheme == SchemeJar) {
+      val (jar, entry) = splitJar(uri)
+      forJarEntry(uri, jar, entry)
     } else {
       new Resource(uri)
     }
   }
 
+  // resolutions by base URI (empty for the classpath) and name, with the modification time of a file resolved to
+  private val resolved = new ConcurrentHashMap[(String, String), (Resource, Long)]
+
+  private def cached(base: String, name: String)(resolve: => Resource): Resource = {
+    val key = (base, name)
+    val hit = resolved.get(key)
+    if (hit != null && hit._2 == stampOf(hit._1)) {
+      hit._1
+    } else {
+      val r = resolve
+      resolved.put(key, (r, stampOf(r)))
+      r
+    }
+  }
+
+  // a file that has gone or changed is looked for again; other resources are taken to be unchanging
+  private def stampOf(r: Resource): Long = if (r.isFile) r.asFile.lastModified else 0L
+
+  /** Forget every resolution, for instance after installing packs. */
+  def flushCache() {
+    resolved.clear()
+  }
+
   private def forFilesystemPath(r: String): Resource = {
     val userDirProbe = new File(usrDir, r)
     if (userDirProbe.exists) {
@@ -73,34 +122,95 @@ object Resource {
   }
 
   private def forJarRelative(base: Resource, entry: String): Resource = {
-    // resolve doesn't process opaque URIs like jar:file://foo.jar!/some/entry, so decompose it first
-    val j = base.uri.getSchemeSpecificPart; // file://foo.jar!/some/entry
-    val (jar, baseEntry) =
-      if (j.contains(JarSeparator)) {
-        if (j.indexOf(JarSeparator) == 0) {
-          throw new IllegalArgumentException("Badly formed jar URI: " + base.uri)
-        }
-        val parts = j.split(JarBang) // split on ! to preserve /
-        (parts(0), parts(1))
-      } else {
-        (j, "/")
-      }
+    val (jar, baseEntry) = base match {
+      case j: JarResource => (j.jar, j.entry)
+      case _ => splitJar(base.uri)
+    }
     val baseEntryURI = new URI("entry", null, baseEntry, null)
     val entryURI = baseEntryURI.resolve(entry)
-    new Resource(new URI(base.uri.getScheme, jar + JarBang + entryURI.getPath(), null))
+    forJarEntry(new URI(base.uri.getScheme, jar + JarBang + entryURI.getPath(), null), jar, entryURI.getPath)
+  }
+
+  // resolve doesn't process opaque URIs like jar:file://foo.jar!/some/entry, so decompose it first
+  private def splitJar(uri: URI): (String, String) = {
+    val j = uri.getSchemeSpecificPart; // file://foo.jar!/some/entry
+    if (j.contains(JarSeparator)) {
+      if (j.indexOf(JarSeparator) == 0) {
+        throw new IllegalArgumentException("Badly formed jar URI: " + uri)
+      }
+      val parts = j.split(JarBang) // split on ! to preserve /
+      (parts(0), parts(1))
+    } else {
+      (j, "/")
+    }
+  }
+
+  // an entry of a jar file is read through the jar's index; an entry of a remote jar through its URL
+  private def forJarEntry(uri: URI, jar: String, entry: String): Resource = {
+    val jarURI = try { new URI(jar) } catch { case e: java.net.URISyntaxException => null }
+    if (jarURI != null && jarURI.getScheme == SchemeFile) new JarResource(uri, jar, entry, new File(jarURI))
+    else new Resource(uri)
+  }
+
+  /**
+   * A jar opened once, whose central directory, read on opening, indexes its entries by name;
+   * so reading an entry needs neither a class loader nor a URL connection.
+   */
+  private class JarIndex(file: File) {
+    private val jar = new JarFile(file)
+    def open(entry: String): InputStream = {
+      val e = jar.getJarEntry(entry)
+      if (e == null) throw new FileNotFoundException(entry + " in " + file)
+      jar.getInputStream(e)
+    }
+  }
+
+  // by jar file path
+  private val jarIndexes = new ConcurrentHashMap[String, JarIndex]
+
+  private def jarIndex(file: File): JarIndex = {
+    val key = file.getPath
+    val index = jarIndexes.get(key)
+    if (index != null) {
+      index
+    } else {
+      val built = new JarIndex(file)
+      val raced = jarIndexes.putIfAbsent(key, built)
+      if (raced != null) raced else built
+    }
+  }
+
+  private class JarResource(u: URI, val jar: String, val entry: String, jarFile: File) extends Resource(u) {
+    // entry names in the jar have no leading slash
+    private def name = if (entry.startsWith("/")) entry.substring(1) else entry
+    override def loadXML(): Elem = {
+      val in = openStream()
+      try { XML.load(in) } finally { in.close() }
+    }
+    override def openStream(): InputStream = new BufferedInputStream(jarIndex(jarFile).open(name))
   }
 
   private class FileResource(val file: File) extends Resource(file.toURI) {
     def this(u: URI) = this(new File(u))
     override val isFile = true
     override val asFile: File = this.file
+    override def lastModified: Long = this.file.lastModified
     override def loadXML(): Elem = XML.loadFile(this.file)
+    override def openStream(): InputStream = new BufferedInputStream(new FileInputStream(this.file))
   }
 }
 
 sealed class Resource private (val uri: URI) {
   val isFile = false
   def asFile: File = throw new UnsupportedOperationException
+  /** Modification time, if known; resources that are not files are taken to be unchanging. */
+  def lastModified: Long = 0L
   def loadXML(): Elem = XML.load(this.uri.toURL)
+  def openStream(): InputStream = new BufferedInputStream(this.uri.toURL.openStream)
+  /** The extension of the last path segment, such as ".homp". */
+  def extension: String = {
+    val path = if (this.uri.isOpaque) this.uri.getSchemeSpecificPart else this.uri.getPath
+    Resource.extensionOf(path.substring(path.lastIndexOf('/') + 1))
+  }
   override def toString = this.uri.toString
 }
@@ -0,0 +1,71 @@
+package hom
+
+import Directions._
+
+object Solution {
+
+  // per gate: x and y in 14 bits each, biased so that negative coordinates fit, then the direction in 4 bits
+  // (Unoriented if none); a Board keeps its moveable gates well within the range
+  private val CoordBits = 14
+  private val CoordMask = (1 << CoordBits) - 1
+  private val CoordBias = 1 << (CoordBits - 1)
+  private val Unoriented = 0xf
+
+  /** The solution shown by the current moveable gates of g. */
+  def apply(g: GameLevel): Solution = {
+    val gates = new Array[Int](g.moveable_gates.length)
+    var i = 0
+    for (m <- g.moveable_gates) {
+      val d = m match {
+        case x: Oriented => x.direction.code
+        case _ => Unoriented
+      }
+      gates(i) = pack(m.position, d)
+      i += 1
+    }
+    new Solution(g.level, gates)
+  }
+
+  /** Read a solution written by Solution.write. */
+  def read(in: java.io.DataInput): Solution = {
+    val level = in.readInt
+    val gates = new Array[Int](in.readInt)
+    for (i <- 0 until gates.length) gates(i) = in.readInt
+    new Solution(level, gates)
+  }
+
+  private def pack(p: Point, d: Int): Int = (((p.x + CoordBias) & CoordMask) << (CoordBits + 4)) | (((p.y + CoordBias) & CoordMask) << 4) | d
+
+  private def x(v: Int) = ((v >>> (CoordBits + 4)) & CoordMask) - CoordBias
+  private def y(v: Int) = ((v >>> 4) & CoordMask) - CoordBias
+  private def d(v: Int) = v & 0xf
+}
+
+/**
+ * A solved level, kept as the positions and directions of its moveable gates in template order,
+ * a few bytes per gate. The rest of the level is in the pack.
+ */
+class Solution(val level: Int, gates: Array[Int]) {
+  import Solution._
+
+  def numGates: Int = gates.length
+
+  def write(out: java.io.DataOutput) {
+    out.writeInt(level)
+    out.writeInt(gates.length)
+    gates.foreach(out.writeInt)
+  }
+
+  /** Move the moveable gates of a fresh instance of the level into the solved positions. */
+  def applyTo(g: GameLevel): GameLevel = {
+    require(g.level == level)
+    if (g.moveable_gates.length != gates.length) {
+      throw new IllegalArgumentException("Solution for level " + level + " has " + gates.length + " gates, level has " + g.moveable_gates.length)
+    }
+    for (i <- 0 until gates.length) {
+      val v = gates(i)
+      g.place(i, Point(x(v), y(v)), if (d(v) == Unoriented) None else Some(Directions.fromCode(d(v))))
+    }
+    g
+  }
+}
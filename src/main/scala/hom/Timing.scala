@@ -0,0 +1,24 @@
+package hom
+
+/**
+ * Startup timing, printed with -Dhom.timing=true: how long after the JVM started each phase was first
+ * reached, from the injector being built to the first trace of a level.
+ */
+object Timing {
+
+  val enabled: Boolean = java.lang.Boolean.getBoolean("hom.timing")
+
+  private var marked = Set.empty[String]
+
+  /** Note that phase has been reached, unless it was before. */
+  def mark(phase: String) {
+    if (enabled) synchronized {
+      if (!marked.contains(phase)) {
+        marked += phase
+        Console.err.println("hom.timing " + phase + " " + uptime + " ms")
+      }
+    }
+  }
+
+  private def uptime: Long = java.lang.management.ManagementFactory.getRuntimeMXBean.getUptime
+}
@@ -0,0 +1,81 @@
+package hom
+
+object TraceBudget {
+
+  val DefaultRays = 50000
+  val DefaultSegments = 50000
+  val DefaultMillis = 250L
+
+  // rays shot from rays shot from ... nest this deep at most, to keep the recursion off the end of the stack
+  private val MaxDepth = 1000
+
+  /** The budget from the system properties hom.trace.rays, hom.trace.segments and hom.trace.millis. */
+  def fromProperties: TraceBudget = {
+    def prop[A](name: String, default: A)(f: String => A): A = sys.props.get(name) match {
+      case Some(v) => try { f(v) } catch { case e: NumberFormatException => default }
+      case None => default
+    }
+    TraceBudget(prop("hom.trace.rays", DefaultRays)(_.toInt), prop("hom.trace.segments", DefaultSegments)(_.toInt),
+      prop("hom.trace.millis", DefaultMillis)(_.toLong))
+  }
+
+  /** The work done so far by one trace. */
+  private[hom] class Work(budget: TraceBudget) {
+    private val deadline = System.nanoTime + budget.millis * 1000000L
+    private var rays = 0
+    private var segments = 0
+    private var depth = 0
+
+    /** Whether the trace ran out of budget, and stopped short. */
+    var exhausted = false
+
+    /** The rays about to be shot were made by a gate that a ray reached. */
+    def enter() {
+      depth += 1
+    }
+
+    def leave() {
+      depth -= 1
+    }
+
+    /** Whether another ray may be shot; once one may not, none may. */
+    def ray(): Boolean = {
+      rays += 1
+      if (rays > budget.rays || segments >= budget.segments || depth > MaxDepth || System.nanoTime > deadline) exhausted = true
+      !exhausted
+    }
+
+    def segment() {
+      segments += 1
+    }
+  }
+}
+
+/**
+ * Limits on the work of one trace: the rays shot, the segments drawn, and the time taken.
+ * Branching gates, such as partial mirrors feeding prisms, can make a trace grow without end;
+ * a trace that reaches a limit stops, and is shown as far as it got.
+ * A pack may set its own limits; any it leaves out are taken from the system properties.
+ */
+case class TraceBudget(rays: Int, segments: Int, millis: Long) {
+
+  private[hom] def start: TraceBudget.Work = new TraceBudget.Work(this)
+}
+
+object TraceLimits {
+
+  /** The limits given by the named attributes, where present. */
+  def fromAttributes(attribute: String => Option[String]): TraceLimits =
+    TraceLimits(attribute("rays").map(_.toInt), attribute("segments").map(_.toInt), attribute("millis").map(_.toLong))
+}
+
+/**
+ * The limits a pack declares, as it declares them. Those it leaves out are not filled in when the pack
+ * is read, so that they are neither saved with it nor fixed at the values the properties had then.
+ */
+case class TraceLimits(rays: Option[Int], segments: Option[Int], millis: Option[Long]) {
+
+  /** The budget b, with the limits declared here in place of its own. */
+  def over(b: TraceBudget): TraceBudget =
+    TraceBudget(rays.getOrElse(b.rays), segments.getOrElse(b.segments), millis.getOrElse(b.millis))
+}
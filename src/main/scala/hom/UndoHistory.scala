@@ -0,0 +1,59 @@
+package hom
+
+object UndoHistory {
+
+  val DefaultDepth = 500
+
+  /** The depth from the system property hom.undo.depth. */
+  def depthFromProperties: Int = sys.props.get("hom.undo.depth") match {
+    case Some(v) => try { v.toInt.max(0) } catch { case e: NumberFormatException => DefaultDepth }
+    case None => DefaultDepth
+  }
+}
+
+/**
+ * The versions of a board to go back and forward to.
+ * At most depth versions are kept to undo, the oldest forgotten first; making a new change
+ * forgets what was undone. Versions share structure, so each one kept costs a few small nodes.
+ */
+class UndoHistory(val depth: Int) {
+
+  private var past: Vector[BoardVersion] = Vector.empty
+  private var future: List[BoardVersion] = Nil
+
+  /** A change was made; before is the version it was made to. */
+  def record(before: BoardVersion) {
+    push(before)
+    this.future = Nil
+  }
+
+  /** The version to go back to from now, if any. */
+  def undo(now: BoardVersion): Option[BoardVersion] = this.past.lastOption.map { v =>
+    this.past = this.past.init
+    this.future ::= now
+    v
+  }
+
+  /** The version to go forward to from now, if any. */
+  def redo(now: BoardVersion): Option[BoardVersion] = this.future.headOption.map { v =>
+    this.future = this.future.tail
+    push(now)
+    v
+  }
+
+  def canUndo: Boolean = !this.past.isEmpty
+
+  def canRedo: Boolean = !this.future.isEmpty
+
+  def clear() {
+    this.past = Vector.empty
+    this.future = Nil
+  }
+
+  private def push(v: BoardVersion) {
+    if (depth > 0) {
+      this.past :+= v
+      if (this.past.length > depth) this.past = this.past.tail
+    }
+  }
+}
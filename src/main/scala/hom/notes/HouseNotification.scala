@@ -8,6 +8,7 @@ import HouseNotifications._
 sealed abstract class HouseNotification[B](val notificationType: HouseNotificationType, val body: B, val subtype: String = null) extends INotification {
   require(notificationType != null)
   def getName: String = notificationType.toString
+  def getId: Int = notificationType.id
   def getBody: AnyRef = body.asInstanceOf[AnyRef]
   final def setBody(b: AnyRef) { throw new UnsupportedOperationException }
   def getType: String = subtype
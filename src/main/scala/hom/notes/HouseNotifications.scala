@@ -17,11 +17,42 @@ object HouseNotifications extends Enumeration {
   val OpenFile, SaveFile, SaveGame, LoadLevel, Help = Value
 
   // model results
-  val PackLoaded, LevelLoaded, LevelUpdate = Value
+  val PackLoaded, LevelLoaded, LevelUpdate, LevelLoading = Value
 
-  def findName(n: String): Option[HouseNotificationType] = HouseNotifications.values.find(_.toString == n)
+  // history of the level being played
+  val Undo, Redo = Value
 
-  def forNotification(n: INotification): Value = withName(n.getName)
+  // files of the pack being played were edited, and the pack was parsed again
+  val PackChanged, PackReloaded = Value
+
+  // by id, and by name for notifications that don't carry an id
+  private lazy val byId: Array[HouseNotificationType] = values.toArray
+  private lazy val byName: Map[String, HouseNotificationType] = values.toList.map(v => (v.toString, v)).toMap
+  // the name strings themselves, the ones HouseFacade interns and our senders pass
+  private lazy val names: Array[String] = byId.map(_.toString)
+
+  def findName(n: String): Option[HouseNotificationType] = byName.get(n)
+
+  /**
+   * The notification type with the given id, which is also its interned notification id
+   * (HouseFacade interns the names in this order).
+   */
+  def forId(id: Int): Option[HouseNotificationType] = if (id >= 0 && id < byId.length) Some(byId(id)) else None
+
+  /**
+   * The type of a notification, by its id if it carries one of ours, otherwise by name.
+   * An id from another registry names something else, so the id is only taken when the
+   * notification carries the very name string we interned; anything else is looked up by name.
+   */
+  def of(n: INotification): Option[HouseNotificationType] = {
+    val id = n.getId
+    if (id >= 0 && id < names.length && (names(id) eq n.getName)) Some(byId(id)) else findName(n.getName)
+  }
+
+  def forNotification(n: INotification): Value = of(n) match {
+    case Some(v) => v
+    case None => withName(n.getName)
+  }
 
   def asNames(c: List[HouseNotificationType]): Array[String] = c.map(n => n.toString).toArray
 }
@@ -0,0 +1,100 @@
+package hom
+
+import java.io.{ByteArrayOutputStream, File}
+import java.nio.ByteBuffer
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.AssertionsForJUnit
+
+import junit.LevelUnitHelper
+
+class BinaryFormatTest extends AssertionsForJUnit with LevelUnitHelper {
+
+  private val pack = GamePack("rowhouses/rowhouse.homp")
+
+  @Test def levelsSurviveRoundTrip() {
+    for (n <- 0 to pack.maxLevel if pack.isLevelDefined(n)) {
+      val expected = GameLevel(pack.levelResource(n), n)
+      val out = new ByteArrayOutputStream
+      BinaryFormat.writeLevel(expected, out)
+      assertSameLevel(expected, BinaryFormat.readLevel(ByteBuffer.wrap(out.toByteArray)).instantiate(n))
+    }
+  }
+
+  @Test def packIsMappedFromFile() {
+    val f = File.createTempFile("rowhouse", Resource.BinaryPackExt)
+    try {
+      BinaryFormat.writePack(pack, f)
+      val binary = GamePack(f)
+      assert(binary.unlockedLevels === pack.unlockedLevels)
+      assert(binary.numLevels === pack.numLevels)
+      // any level may be read first
+      for (n <- (0 to pack.maxLevel).reverse if pack.isLevelDefined(n)) {
+        assert(binary.packEntryForLevel(n).file === pack.packEntryForLevel(n).file)
+        assert(binary.packEntryForLevel(n).unlock === pack.packEntryForLevel(n).unlock)
+        assertSameLevel(GameLevel(pack.levelResource(n), n), binary.levelTemplate(n).instantiate(n))
+      }
+    } finally {
+      f.delete()
+    }
+  }
+
+  @Test def traceLimitsSurviveRoundTrip() {
+    val unset, set = File.createTempFile("rowhouse", Resource.BinaryPackExt)
+    try {
+      val p = GamePack("rowhouses/rowhouse.homp")
+      BinaryFormat.writePack(p, unset)
+      p.traceLimits = Some(TraceLimits(Some(10), None, Some(30L)))
+      BinaryFormat.writePack(p, set)
+      expect(None) { GamePack(unset).traceLimits }
+      val binary = GamePack(set)
+      expect(Some(TraceLimits(Some(10), None, Some(30L)))) { binary.traceLimits }
+      expect(TraceBudget(10, TraceBudget.fromProperties.segments, 30L)) { binary.traceBudget }
+      assert(binary.numLevels === p.numLevels)
+    } finally {
+      unset.delete()
+      set.delete()
+    }
+  }
+
+  @Test def negativeIdsSurviveRoundTrip() {
+    val dir = File.createTempFile("pack", "")
+    dir.delete()
+    dir.mkdir()
+    try {
+      for (name <- List("welcome.hom", "level_1.hom")) {
+        val w = new java.io.FileWriter(new File(dir, name))
+        try w.write(scala.io.Source.fromURL(Resource(pack.resource.get, name).uri.toURL, "UTF-8").mkString) finally w.close()
+      }
+      val xml = new File(dir, "negative" + Resource.PackExt)
+      val w = new java.io.FileWriter(xml)
+      try {
+        w.write("<HoMPack><unlocked><ulevel id=\"-1\"/></unlocked>" +
+          "<level id=\"-1\" file=\"level_1.hom\"><unlock id=\"0\"/></level><level id=\"0\" file=\"welcome.hom\"/></HoMPack>")
+      } finally {
+        w.close()
+      }
+      val p = GamePack(xml)
+      val binary = new File(dir, "negative" + Resource.BinaryPackExt)
+      BinaryFormat.writePack(p, binary)
+      val b = GamePack(binary)
+      expect(List(-1, 0)) { b.entries.map(_.id) }
+      expect(List(0)) { b.packEntryForLevel(-1).unlock }
+      assertSameLevel(p.levelTemplate(-1).instantiate(-1), b.levelTemplate(-1).instantiate(-1))
+
+      // and back to XML, with a file for each level
+      new File(dir, "level_1.hom").delete()
+      HomConvert.convert(binary, new File(dir, "back" + Resource.PackExt))
+      assertSameLevel(p.levelTemplate(-1).instantiate(-1), GameLevel(Resource(new File(dir, "level_1.hom")), -1))
+    } finally {
+      dir.listFiles.foreach(_.delete())
+      dir.delete()
+    }
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def rejectsOtherFiles() {
+    BinaryFormat.readLevel(ByteBuffer.wrap("<houseofmirrors/>".getBytes("UTF-8")))
+  }
+}
@@ -0,0 +1,113 @@
+package hom
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import Directions._
+import LineColors._
+
+class BoardTest extends AssertionsForJUnit {
+
+  // a source on the margin, a fixed blocker, a moveable mirror and a moveable blocker
+  private def level = new GameLevel(0, "", Bound(0, 0, 4, 4),
+    List(new Source(Point(-1, 0), East, White), new Blocker(Point(3, 3))),
+    List(new MoveableMirror(Point(1, 0), South), new MoveableBlocker(Point(2, 2))))
+
+  @Test def occupiedFollowsMoves() {
+    val g = level
+    assert(g.occupied(Point(-1, 0)))
+    assert(g.occupied(Point(1, 0)))
+    assert(!g.occupied(Point(1, 1)))
+    assert(g.moveTo(Point(1, 0), Point(1, 1)))
+    assert(!g.occupied(Point(1, 0)))
+    assert(g.occupied(Point(1, 1)))
+    expect(Point(1, 1)) { g.moveable_gates(0).position }
+    expect(Some(g.moveable_gates(0))) { g.gateAt(Point(1, 1)) }
+  }
+
+  @Test def movesAreChecked() {
+    val g = level
+    // onto another gate, out of bounds, a fixed gate, an empty cell
+    assert(!g.moveTo(Point(1, 0), Point(2, 2)))
+    assert(!g.moveTo(Point(1, 0), Point(4, 0)))
+    assert(!g.moveTo(Point(3, 3), Point(3, 2)))
+    assert(!g.moveTo(Point(0, 0), Point(0, 1)))
+    expect(Point(1, 0)) { g.moveable_gates(0).position }
+  }
+
+  @Test def onlyTurnableGatesTurn() {
+    val g = level
+    assert(g.turnCW(Point(1, 0)))
+    expect(Southwest) { g.moveable_gates(0).asInstanceOf[Oriented].direction }
+    assert(g.turnCCW(Point(1, 0)))
+    assert(g.turnCCW(Point(1, 0)))
+    expect(Southeast) { g.moveable_gates(0).asInstanceOf[Oriented].direction }
+    assert(!g.turnCW(Point(2, 2)))
+    assert(!g.turnCW(Point(-1, 0)))
+    assert(!g.turnCW(Point(0, 0)))
+  }
+
+  @Test def farCellsAreRestored() {
+    // the cells reach 2047, the last position a version can hold
+    val g = new GameLevel(0, "", Bound(2040, -2047, 7, 4), Nil, List(new MoveableBlocker(Point(2046, -2047))))
+    val before = g.version
+    assert(g.moveTo(Point(2046, -2047), Point(2045, -2046)))
+    g.restore(before)
+    expect(Point(2046, -2047)) { g.moveable_gates(0).position }
+  }
+
+  @Test def boundsMustFitVersions() {
+    intercept[IllegalArgumentException] { new Board(Bound(0, 0, 2048, 1), Nil, Nil) }
+    intercept[IllegalArgumentException] { new Board(Bound(0, -2048, 1, 1), Nil, Nil) }
+    intercept[IllegalArgumentException] { new Board(Bound(0, 0, 4, 4), Nil, List(new MoveableBlocker(Point(0, 4096)))) }
+  }
+
+  @Test def copiesAreIndependent() {
+    val g = level
+    val c = g.copy
+    assert(c.moveTo(Point(1, 0), Point(0, 1)))
+    assert(c.turnCW(Point(0, 1)))
+    assert(g.occupied(Point(1, 0)))
+    assert(!g.occupied(Point(0, 1)))
+    expect(South) { g.moveable_gates(0).asInstanceOf[Oriented].direction }
+    // fixed gates are shared
+    assert(c.fixed_gates(1) eq g.fixed_gates(1))
+  }
+
+  @Test def placingSwapsGates() {
+    val g = level
+    g.place(0, Point(2, 2), Some(North))
+    g.place(1, Point(1, 0), None)
+    expect(Some(g.moveable_gates(0))) { g.gateAt(Point(2, 2)) }
+    expect(Some(g.moveable_gates(1))) { g.gateAt(Point(1, 0)) }
+    expect(North) { g.moveable_gates(0).asInstanceOf[Oriented].direction }
+  }
+
+  @Test def keptGatesGoBackWhereTheyWere() {
+    def edited(blockerAt: Point) = new GameLevel(0, "", Bound(0, 0, 4, 4),
+      List(new Source(Point(-1, 0), East, White), new Blocker(blockerAt)),
+      List(new MoveableMirror(Point(1, 0), South), new MoveableBlocker(Point(2, 2))))
+    val before = level
+    assert(before.moveTo(Point(1, 0), Point(2, 1)))
+    assert(before.turnCW(Point(2, 1)))
+    assert(before.moveTo(Point(2, 2), Point(0, 3)))
+    // the edit puts a fixed gate where the blocker was moved to
+    val after = edited(Point(0, 3)).keepPositions(before)
+    expect(Point(2, 1)) { after.moveable_gates(0).position }
+    expect(Southwest) { after.moveable_gates(0).asInstanceOf[Oriented].direction }
+    expect(Point(2, 2)) { after.moveable_gates(1).position }
+  }
+
+  @Test def gateLeftBehindKeepsItsCell() {
+    val before = level
+    assert(before.moveTo(Point(1, 0), Point(0, 2)))
+    assert(before.moveTo(Point(2, 2), Point(3, 0)))
+    // the edit makes the second gate a mirror, which stays in the cell the first would go back to
+    val after = new GameLevel(0, "", Bound(0, 0, 4, 4),
+      List(new Source(Point(-1, 0), East, White), new Blocker(Point(3, 3))),
+      List(new MoveableMirror(Point(1, 0), South), new MoveableMirror(Point(0, 2), North))).keepPositions(before)
+    expect(Point(1, 0)) { after.moveable_gates(0).position }
+    expect(Point(0, 2)) { after.moveable_gates(1).position }
+    expect(Some(after.moveable_gates(1))) { after.gateAt(Point(0, 2)) }
+  }
+}
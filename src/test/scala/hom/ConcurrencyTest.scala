@@ -0,0 +1,117 @@
+package hom
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import org.puremvc.java.core.model.Model
+import org.puremvc.java.core.view.View
+import org.puremvc.java.interfaces.{IFunction, INotification}
+import org.puremvc.java.patterns.mediator.Mediator
+import org.puremvc.java.patterns.observer.{Notification, Observer, Observers}
+import org.puremvc.java.patterns.proxy.Proxy
+
+/** Stress tests for the registries under concurrent use. */
+class ConcurrencyTest extends AssertionsForJUnit {
+
+  private val Threads = 8
+  private val Rounds = 2000
+
+  /** Run body(t) on each of n threads at once; fail with the first exception thrown. */
+  private def concurrently(n: Int)(body: Int => Unit) {
+    val go = new CountDownLatch(1)
+    val failures = new ConcurrentLinkedQueue[Throwable]
+    val threads = for (t <- 0 until n) yield new Thread("stress-" + t) {
+      override def run() {
+        go.await()
+        try { body(t) } catch { case e: Throwable => failures.add(e) }
+      }
+    }
+    threads.foreach(_.start())
+    go.countDown()
+    threads.foreach(_.join(TimeUnit.SECONDS.toMillis(60)))
+    assert(threads.forall(!_.isAlive), "stress threads did not finish")
+    if (!failures.isEmpty) throw failures.peek
+  }
+
+  private class Counting(name: String, interests: Array[String], counter: AtomicInteger) extends Mediator(name, null) {
+    override def listNotificationInterests = interests
+    override def handleNotification(n: INotification) { counter.incrementAndGet() }
+  }
+
+  @Test def viewRegistersNotifiesAndRemovesConcurrently() {
+    val sut = new View
+    val names = Array("a", "b", "c", "d")
+    val received = new AtomicInteger
+    // a mediator that stays, so broadcasts always reach someone
+    sut.registerMediator(new Counting("resident", names, new AtomicInteger))
+    concurrently(Threads) { t =>
+      for (i <- 0 until Rounds) {
+        val name = "m" + t + "_" + i
+        sut.registerMediator(new Counting(name, names, received))
+        sut.notifyObservers(new Notification(names(i % names.length), null, null))
+        // a new name now and then, growing the dispatch table under the other threads
+        if (i % 100 == 0) sut.registerObserver("n" + t + "_" + i, new Observer(new IFunction {
+          def onNotification(n: INotification) { }
+        }, this))
+        assert(sut.removeMediator(name) != null)
+      }
+    }
+    val before = received.get
+    for (n <- names) sut.notifyObservers(new Notification(n, null, null))
+    // every transient mediator was removed, so nobody counts any more
+    expect(before) { received.get }
+    assert(sut.retrieveMediator("resident") != null)
+  }
+
+  @Test def removingMediatorLeavesOthers() {
+    val sut = new View
+    val kept, gone = new AtomicInteger
+    sut.registerMediator(new Counting("kept", Array("a", "b"), kept))
+    sut.registerMediator(new Counting("gone", Array("b", "c"), gone))
+    sut.removeMediator("gone")
+    for (n <- List("a", "b", "c")) sut.notifyObservers(new Notification(n, null, null))
+    expect(2) { kept.get }
+    expect(0) { gone.get }
+    expect(null) { sut.removeMediator("gone") }
+  }
+
+  @Test def observersCopyOnWrite() {
+    val sut = new Observers("a")
+    val notified = new AtomicInteger
+    def observer = new Observer(new IFunction {
+      def onNotification(n: INotification) { notified.incrementAndGet() }
+    }, this)
+    val note = new Notification("a", null, null)
+    concurrently(Threads) { t =>
+      if (t % 2 == 0) {
+        for (i <- 0 until Rounds) {
+          val o = observer
+          sut.addObserver(o)
+          sut.deleteObserver(o)
+        }
+      } else {
+        for (i <- 0 until Rounds) sut.notifyObservers(note)
+      }
+    }
+    assert(sut.isEmpty)
+  }
+
+  @Test def modelRegistersRetrievesAndRemovesConcurrently() {
+    val sut = new Model
+    concurrently(Threads) { t =>
+      for (i <- 0 until Rounds) {
+        val name = "p" + t + "_" + i
+        sut.registerProxy(new Proxy(name, Int.box(i)))
+        assert(sut.retrieveProxy(name).getData === i)
+        if (i % 2 == 0) assert(sut.removeProxy(name) != null)
+      }
+    }
+    for (t <- 0 until Threads; i <- 0 until Rounds) {
+      val p = sut.retrieveProxy("p" + t + "_" + i)
+      if (i % 2 == 0) assert(p === null) else assert(p.getData === i)
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package hom
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import Directions._
+
+class DirectionsTest extends AssertionsForJUnit {
+
+  @Test def codesGoClockwiseFromNorth() {
+    val all = Directions.values.toList.map(_.asInstanceOf[Direction])
+    expect((0 until 8).toList) { all.map(_.code) }
+    for (d <- all) {
+      expect(d) { Directions.fromCode(d.code) }
+      expect(d) { d.right45.left45 }
+      expect(d.reverse) { d.right135.right45 }
+      expect(d.left90) { d.left45.left45 }
+    }
+    expect(Northwest) { Directions.fromCode(-1) }
+  }
+
+  @Test def angleIsClockwiseFromOther() {
+    expect(90) { East angle North }
+    expect(270) { North angle East }
+    expect(0) { West angle West }
+    for (a <- Directions.values; b <- Directions.values) {
+      val (x, y) = (a.asInstanceOf[Direction], b.asInstanceOf[Direction])
+      expect(((x.angle - y.angle) % 360 + 360) % 360) { x angle y }
+    }
+  }
+
+  @Test def raysStepOneCell() {
+    expect(Point(3, 1)) { Ray(Point(2, 2), Northeast, LineColors.Red).nextPoint(Point(2, 2)) }
+    expect(Point(2, 3)) { Ray(Point(2, 2), South, LineColors.Red).nextPoint(Point(2, 2)) }
+    expect(Point(1, 2)) { Ray(Point(2, 2), West, LineColors.Red).nextPoint(Point(2, 2)) }
+  }
+}
@@ -0,0 +1,71 @@
+package hom
+
+import com.google.inject.{Guice, Inject, Injector, Singleton}
+
+import org.puremvc.java.core.controller.{CommandFactory, Controller}
+import org.puremvc.java.core.view.View
+import org.puremvc.java.interfaces.{ICommand, INotification}
+import org.puremvc.java.patterns.command.{Reusable, SimpleCommand}
+import org.puremvc.java.patterns.observer.Notification
+
+/**
+ * Compares the cost of dispatching a notification to a command built by Guice on every dispatch,
+ * built through a cached provider, and kept by the controller because it is Reusable.
+ * Run from the test classpath: scala hom.DispatchBench [rounds]
+ */
+object DispatchBench {
+
+  @Singleton class Counter { var count = 0 }
+
+  class Fresh @Inject()(counter: Counter) extends SimpleCommand {
+    override def execute(n: INotification) { counter.count += 1 }
+  }
+
+  @Reusable class Kept @Inject()(counter: Counter) extends SimpleCommand {
+    override def execute(n: INotification) { counter.count += 1 }
+  }
+
+  class Instances(injector: Injector) extends CommandFactory {
+    def create(k: Class[_ <: ICommand]): ICommand = injector.getInstance(k)
+  }
+
+  class Providers(injector: Injector) extends CommandFactory {
+    private val providers = new java.util.HashMap[Class[_ <: ICommand], com.google.inject.Provider[_ <: ICommand]]
+    def create(k: Class[_ <: ICommand]): ICommand = {
+      var p = providers.get(k)
+      if (p == null) {
+        p = injector.getProvider(k)
+        providers.put(k, p)
+      }
+      p.get
+    }
+  }
+
+  def main(args: Array[String]) {
+    val rounds = if (args.length > 0) args(0).toInt else 1000000
+    val injector = Guice.createInjector()
+    def dispatcher(f: CommandFactory, k: Class[_ <: ICommand]): () => Unit = {
+      val view = new View
+      val controller = new Controller(f)
+      controller.setObserverRegistry(view)
+      controller.registerCommand("go", k)
+      val note = new Notification(view.notificationId("go"), "go", null, null)
+      () => view.notifyObservers(note)
+    }
+    val instances = dispatcher(new Instances(injector), classOf[Fresh])
+    val providers = dispatcher(new Providers(injector), classOf[Fresh])
+    val reusable = dispatcher(new Providers(injector), classOf[Kept])
+    // warm up
+    for (i <- 0 until rounds / 4) { instances(); providers(); reusable() }
+    report("instance", rounds)(instances())
+    report("provider", rounds)(providers())
+    report("reusable", rounds)(reusable())
+  }
+
+  private def report(name: String, rounds: Int)(f: => Unit) {
+    val start = System.nanoTime
+    for (i <- 0 until rounds) f
+    val nanos = (System.nanoTime - start).toDouble / rounds
+    println("%-10s %8.1f ns/dispatch".format(name, nanos))
+  }
+}
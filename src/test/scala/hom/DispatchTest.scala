@@ -0,0 +1,102 @@
+package hom
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import org.puremvc.java.core.controller.{CommandFactory, Controller}
+import org.puremvc.java.core.view.View
+import org.puremvc.java.interfaces.{ICommand, IFunction, INotification}
+import org.puremvc.java.patterns.command.{Reusable, SimpleCommand}
+import org.puremvc.java.patterns.observer.{Notification, Observer}
+
+import notes.HouseNotifications
+
+class DispatchTest extends AssertionsForJUnit {
+
+  private def observer(seen: collection.mutable.Buffer[INotification]) = new Observer(new IFunction {
+    def onNotification(n: INotification) { seen += n }
+  }, this)
+
+  @Test def idsAreAssignedInOrder() {
+    val sut = new View
+    expect(0) { sut.notificationId("a") }
+    expect(1) { sut.notificationId("b") }
+    expect(0) { sut.notificationId("a") }
+  }
+
+  @Test def dispatchesByIdAndByName() {
+    val sut = new View
+    val seen = new collection.mutable.ArrayBuffer[INotification]
+    sut.registerObserver("b", observer(seen))
+    val id = sut.notificationId("b")
+    sut.notifyObservers(new Notification(id, "b", null, null))
+    sut.notifyObservers(new Notification("b", null, null))
+    sut.notifyObservers(new Notification("c", null, null))
+    expect(2) { seen.length }
+  }
+
+  @Test def ignoresForeignId() {
+    val sut = new View
+    val seen = new collection.mutable.ArrayBuffer[INotification]
+    sut.notificationId("a")
+    sut.registerObserver("b", observer(seen))
+    // id 0 here is "a", so the name decides
+    sut.notifyObservers(new Notification(0, "b", null, null))
+    expect(1) { seen.length }
+  }
+
+  @Test def controllerExecutesById() {
+    val view = new View
+    var executed = 0
+    val sut = new Controller(new CommandFactory {
+      def create(k: Class[_ <: ICommand]): ICommand = new SimpleCommand {
+        override def execute(n: INotification) { executed += 1 }
+      }
+    })
+    sut.setObserverRegistry(view)
+    sut.registerCommand("go", classOf[SimpleCommand])
+    view.notifyObservers(new Notification(view.notificationId("go"), "go", null, null))
+    sut.executeCommand(new Notification("go", null, null))
+    expect(2) { executed }
+    sut.removeCommand("go")
+    view.notifyObservers(new Notification(view.notificationId("go"), "go", null, null))
+    expect(2) { executed }
+  }
+
+  @Test def reusableCommandIsCreatedOnce() {
+    val view = new View
+    var created = List.empty[Class[_]]
+    val sut = new Controller(new CommandFactory {
+      def create(k: Class[_ <: ICommand]): ICommand = { created ::= k; k.newInstance }
+    })
+    sut.setObserverRegistry(view)
+    sut.registerCommand("kept", classOf[DispatchTest.Kept])
+    sut.registerCommand("fresh", classOf[DispatchTest.Fresh])
+    for (i <- 0 until 3) {
+      view.notifyObservers(new Notification("kept", null, null))
+      view.notifyObservers(new Notification("fresh", null, null))
+    }
+    expect(1) { created.count(_ == classOf[DispatchTest.Kept]) }
+    expect(3) { created.count(_ == classOf[DispatchTest.Fresh]) }
+  }
+
+  @Test def houseNotificationsByIdOrName() {
+    import HouseNotifications._
+    expect(Some(LevelUpdate)) { HouseNotifications.forId(LevelUpdate.id) }
+    expect(Some(LevelUpdate)) { HouseNotifications of new Notification(LevelUpdate.id, LevelUpdate.toString, null, null) }
+    expect(Some(LevelUpdate)) { HouseNotifications of new Notification(LevelUpdate.toString, null, null) }
+    expect(None) { HouseNotifications.forId(HouseNotifications.maxId) }
+    // an id from another registry is not trusted over the name
+    expect(Some(Trace)) { HouseNotifications of new Notification(LevelUpdate.id, Trace.toString, null, null) }
+    expect(None) { HouseNotifications of new Notification(LevelUpdate.id, "elsewhere", null, null) }
+    // an equal name in another string is still found, by name
+    expect(Some(LevelUpdate)) { HouseNotifications of new Notification(LevelUpdate.id, new String(LevelUpdate.toString), null, null) }
+  }
+}
+
+object DispatchTest {
+  class Fresh extends SimpleCommand {
+    override def execute(n: INotification) { }
+  }
+  @Reusable class Kept extends Fresh
+}
@@ -0,0 +1,104 @@
+package hom
+
+import java.awt.EventQueue
+import java.util.concurrent.TimeUnit
+
+import org.junit.{After, Test}
+import org.scalatest.junit.AssertionsForJUnit
+
+import org.puremvc.java.core.controller.{CommandFactory, Controller}
+import org.puremvc.java.core.view.EventQueueView
+import org.puremvc.java.interfaces.{ICommand, IFunction, INotification}
+import org.puremvc.java.patterns.command.{RunsOn, SimpleCommand}
+import org.puremvc.java.patterns.observer.{Affinity, Notification, Observer}
+
+class EventQueueTest extends AssertionsForJUnit {
+
+  private val sut = new EventQueueView(2)
+
+  @After def tearDown() {
+    sut.shutdown()
+  }
+
+  private def observe(name: String, affinity: Affinity)(f: INotification => Unit) {
+    sut.registerObserver(name, new Observer(new IFunction {
+      def onNotification(n: INotification) { f(n) }
+    }, this, affinity))
+  }
+
+  private def idle() = assert(sut.awaitIdle(10, TimeUnit.SECONDS))
+
+  @Test def handlersRunToCompletion() {
+    val seen = new java.util.Vector[String]
+    observe("a", Affinity.ANY) { n =>
+      seen.add("a begins")
+      sut.notifyObservers(new Notification("b", null, null))
+      seen.add("a ends")
+    }
+    observe("b", Affinity.ANY) { n => seen.add("b") }
+    sut.notifyObservers(new Notification("a", null, null))
+    idle()
+    expect(List("a begins", "a ends", "b")) { seen.toArray.toList }
+  }
+
+  @Test def observersRunOnTheirThreads() {
+    var ui, worker = false
+    observe("a", Affinity.UI) { n => ui = EventQueue.isDispatchThread }
+    observe("a", Affinity.WORKER) { n => worker = !EventQueue.isDispatchThread && Thread.currentThread.getName.startsWith("puremvc-worker") }
+    sut.notifyObservers(new Notification("a", null, null))
+    idle()
+    assert(ui)
+    assert(worker)
+  }
+
+  @Test def orderIsPreservedPerName() {
+    val seen = new java.util.Vector[Integer]
+    observe("n", Affinity.WORKER) { n => seen.add(n.getBody.asInstanceOf[Integer]) }
+    observe("m", Affinity.UI) { n => }
+    for (i <- 0 until 200) {
+      sut.notifyObservers(new Notification("n", Int.box(i), null))
+      sut.notifyObservers(new Notification("m", null, null))
+    }
+    idle()
+    expect((0 until 200).toList) { seen.toArray.toList }
+  }
+
+  @Test def failingObserverDoesNotStopDispatch() {
+    var after = false
+    observe("a", Affinity.WORKER) { n => throw new IllegalStateException("expected by the test") }
+    observe("a", Affinity.ANY) { n => after = true }
+    val quiet = new Thread.UncaughtExceptionHandler { def uncaughtException(t: Thread, e: Throwable) { } }
+    val previous = Thread.getDefaultUncaughtExceptionHandler
+    Thread.setDefaultUncaughtExceptionHandler(quiet)
+    try {
+      sut.notifyObservers(new Notification("a", null, null))
+      idle()
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(previous)
+    }
+    assert(after)
+  }
+
+  @Test def commandsRunOnTheThreadTheyAskFor() {
+    val controller = new Controller(new CommandFactory {
+      def create(k: Class[_ <: ICommand]): ICommand = k.newInstance
+    })
+    controller.setObserverRegistry(sut)
+    controller.registerCommand("model", classOf[EventQueueTest.Model])
+    controller.registerCommand("ui", classOf[EventQueueTest.Ui])
+    sut.notifyObservers(new Notification("model", null, null))
+    sut.notifyObservers(new Notification("ui", null, null))
+    idle()
+    expect(Map("model" -> false, "ui" -> true)) { EventQueueTest.onEDT.toMap }
+  }
+}
+
+object EventQueueTest {
+  val onEDT = new collection.mutable.HashMap[String, Boolean] with collection.mutable.SynchronizedMap[String, Boolean]
+
+  class Model extends SimpleCommand {
+    override def execute(n: INotification) { onEDT(n.getName) = EventQueue.isDispatchThread }
+  }
+
+  @RunsOn(Affinity.UI) class Ui extends Model
+}
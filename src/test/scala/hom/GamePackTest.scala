@@ -26,4 +26,24 @@ class GamePackTest extends AssertionsForJUnit with SeqUnitHelper {
     val sut = GamePack(f);
     assert(sut.numLevels === 20)
   }
+
+  @Test def snapshotIsPreferredUnlessOlder() {
+    val dir = java.nio.file.Files.createTempDirectory("hom-snapshot").toFile
+    val rows = new java.io.File(dir, "rowhouses")
+    rows.mkdir()
+    val pack = new java.io.File(rows, "rowhouse.homp")
+    val snapshot = new java.io.File(rows, "rowhouse.hompb")
+    try {
+      val loader = new java.net.URLClassLoader(Array(dir.toURI.toURL), null)
+      val name = "rowhouses/rowhouse.homp"
+      expect(name) { GamePack.snapshotOf(name, loader) }
+      BinaryFormat.writePack(GamePack(name), snapshot)
+      expect("rowhouses/rowhouse.hompb") { GamePack.snapshotOf(name, loader) }
+      java.nio.file.Files.copy(Resource(name).openStream(), pack.toPath)
+      pack.setLastModified(snapshot.lastModified + 10000)
+      expect(name) { GamePack.snapshotOf(name, loader) }
+    } finally {
+      pack.delete(); snapshot.delete(); rows.delete(); dir.delete()
+    }
+  }
 }
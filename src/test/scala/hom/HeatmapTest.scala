@@ -0,0 +1,63 @@
+package hom
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.JavaConversions._
+
+class HeatmapTest extends AssertionsForJUnit {
+
+  private val template = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_10.hom"))
+
+  @Test def cellsAreFreeOrOwn() {
+    val g = template.instantiate(10)
+    val p = g.moveable_gates(0).position
+    val cells = Heatmap.cells(g, p)
+    assert(cells.contains(p))
+    assert(cells.forall(c => g.bounds.contains(c)))
+    expect(cells.size - 1) { cells.count(c => !g.occupied(c)) }
+    expect(g.bounds.width * g.bounds.height - g.gates.size + 1) { cells.size }
+  }
+
+  @Test def scoreIsDetectorsLitThere() {
+    val g = template.instantiate(10)
+    val p = g.moveable_gates(0).position
+    val lit = g.trace.status.score
+    expect(lit) { Heatmap.score(g, p, p, false) }
+    val to = Heatmap.cells(g, p).find(_ != p).get
+    val c = g.copy
+    c.moveTo(p, to)
+    expect(c.trace.status.score) { Heatmap.score(g, p, to, false) }
+    assert(Heatmap.score(g, p, to, true) >= Heatmap.score(g, p, to, false))
+    // the level itself is untouched
+    assert(g.moveable_gates(0).position === p)
+  }
+
+  @Test def fanOutShowsEveryResult() {
+    val loader = new Loader
+    val shown = new ConcurrentLinkedQueue[(Int, Int)]
+    val f = loader.fanOut(1 to 100)(x => x * x) { r => shown.addAll(r) }
+    f.get(10, TimeUnit.SECONDS)
+    // the last results may still be on their way to the EDT
+    val flushed = new CountDownLatch(1)
+    scala.swing.Swing.onEDT(flushed.countDown())
+    assert(flushed.await(10, TimeUnit.SECONDS))
+    expect((1 to 100).map(x => (x, x * x)).toSet) { shown.toSet }
+  }
+
+  @Test def cancelledFanOutShowsNothingMore() {
+    val loader = new Loader
+    val release = new CountDownLatch(1)
+    @volatile var shown = 0
+    val f = loader.fanOut(1 to 4) { x => release.await(); x } { r => shown += r.size }
+    f.cancel(true)
+    release.countDown()
+    val flushed = new CountDownLatch(1)
+    scala.swing.Swing.onEDT(flushed.countDown())
+    assert(flushed.await(10, TimeUnit.SECONDS))
+    expect(0) { shown }
+    assert(f.isCancelled)
+  }
+}
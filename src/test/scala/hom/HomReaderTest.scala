@@ -0,0 +1,43 @@
+package hom
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.AssertionsForJUnit
+
+import junit.LevelUnitHelper
+
+class HomReaderTest extends AssertionsForJUnit with LevelUnitHelper {
+
+  private val pack = Resource("rowhouses/rowhouse.homp")
+
+  @Test def readsSamePackAsDocument() {
+    val dom = GamePack.fromXML(pack.loadXML)
+    val stax = HomReader.readPack(pack)
+    assert(stax.unlockedLevels === dom.unlockedLevels)
+    assert(stax.numLevels === dom.numLevels)
+    for (n <- 0 to dom.maxLevel if dom.isLevelDefined(n)) {
+      val (a, b) = (dom.packEntryForLevel(n), stax.packEntryForLevel(n))
+      assert(b.file === a.file)
+      assert(b.unlock === a.unlock)
+    }
+  }
+
+  @Test def readsSameLevelsAsDocument() {
+    val p = GamePack(pack.toString.substring(pack.toString.indexOf("rowhouses")))
+    for (n <- 0 to p.maxLevel if p.isLevelDefined(n)) {
+      val r = p.levelResource(n)
+      assertSameLevel(GameLevel.fromXML(r.loadXML, n), HomReader.readLevel(r).instantiate(n))
+    }
+  }
+
+  @Test def readsSameTestLevelAsDocument() {
+    val r = Resource("rowhouses/trial-welcome.hom")
+    assertSameLevel(GameLevel.fromXML(r.loadXML, 0), HomReader.readLevel(r).instantiate(0))
+  }
+
+  @Test def levelWithoutIdIsNamed() {
+    val in = new java.io.ByteArrayInputStream("<pack><level file='a.hom'/></pack>".getBytes("UTF-8"))
+    val e = intercept[NoSuchElementException] { HomReader.readPack(in) }
+    assert(e.getMessage.startsWith("id at "))
+  }
+}
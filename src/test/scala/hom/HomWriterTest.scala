@@ -0,0 +1,63 @@
+package hom
+
+import java.io.{ByteArrayInputStream, StringWriter}
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.AssertionsForJUnit
+
+import junit.LevelUnitHelper
+
+class HomWriterTest extends AssertionsForJUnit with LevelUnitHelper with WithFileWriter {
+
+  private val pack = GamePack("rowhouses/rowhouse.homp")
+
+  private def written(f: HomWriter => Unit) = {
+    val w = new StringWriter
+    f(new HomWriter(w))
+    new ByteArrayInputStream(w.toString.getBytes("UTF-8"))
+  }
+
+  @Test def levelsReadBack() {
+    for (n <- 0 to pack.maxLevel if pack.isLevelDefined(n)) {
+      val expected = GameLevel(pack.levelResource(n), n)
+      assertSameLevel(expected, HomReader.readLevel(written(_.level(expected))).instantiate(n))
+      assertSameLevel(expected, HomReader.readLevel(written(_.node(expected.toXML))).instantiate(n))
+    }
+  }
+
+  @Test def packReadsBackWithSolutions() {
+    val p = HomReader.readPack(written(_.pack(pack, i => if (i == 1) Some("mine_1.hom") else None)))
+    assert(p.unlockedLevels === pack.unlockedLevels)
+    assert(p.entries.map(_.id) === pack.entries.map(_.id))
+    assert(p.entries.map(_.file) === pack.entries.map(_.file))
+    assert(p.entries.map(_.unlock) === pack.entries.map(_.unlock))
+  }
+
+  @Test def movedGatesAreWritten() {
+    val g = GameLevel(pack.levelResource(1), 1)
+    val m = g.moveable_gates(0).asInstanceOf[Moveable]
+    m.moveTo(Point(0, 0))
+    val back = HomReader.readLevel(written(_.level(g))).instantiate(1)
+    assert(back.moveable_gates(0).position === Point(0, 0))
+  }
+
+  @Test def shortNamesAreWrittenAtomically() {
+    val dir = java.nio.file.Files.createTempDirectory("hom-writer").toFile
+    val f = new java.io.File(dir, "a")
+    try {
+      withAtomicWriter(f) { w => w.write("x") }
+      expect(List("a")) { dir.list.toList }
+      expect("x") { scala.io.Source.fromFile(f).mkString }
+    } finally {
+      f.delete()
+      dir.delete()
+    }
+  }
+
+  // the description markup reads back with its attributes in reverse order
+  override def assertSameDescription(expected: String, actual: String) {
+    def markup(s: String) = scala.xml.XML.loadString("<description>" + s + "</description>")
+    assert(markup(actual) === markup(expected))
+  }
+}
@@ -0,0 +1,163 @@
+package hom
+
+import java.io.File
+import java.util.concurrent.{CountDownLatch, LinkedBlockingQueue, TimeUnit}
+
+import scala.swing.Swing
+
+import org.junit.{After, Before, Test}
+import org.scalatest.junit.AssertionsForJUnit
+
+import com.google.inject.{AbstractModule, Guice, Inject, Injector}
+
+import org.puremvc.java.core.controller.{CommandFactory, Controller}
+import org.puremvc.java.core.model.Model
+import org.puremvc.java.core.view.View
+import org.puremvc.java.interfaces.{ICommand, IController, IModel, INotification, IView}
+import org.puremvc.java.patterns.mediator.Mediator
+import org.puremvc.java.patterns.observer.Notifier
+
+import notes.HouseNotifications._
+
+/** Drives the commands through a facade wired as the application wires it, with a journal of its own. */
+class HouseFacadeTest extends AssertionsForJUnit {
+
+  private var file: File = _
+  private var journal: Journal = _
+  private var facade: HouseFacade = _
+
+  private val traces = new LinkedBlockingQueue[GameState]
+
+  @Before def setUp() {
+    file = File.createTempFile("journal", ".bin")
+    file.delete()
+    journal = new Journal(file, 60000, 1000)
+    val injector = Guice.createInjector(new AbstractModule {
+      override protected def configure() {
+        bind(classOf[CommandFactory]).to(classOf[HouseFacadeTest.Factory])
+        bind(classOf[IModel]).to(classOf[Model])
+        bind(classOf[IView]).to(classOf[View])
+        bind(classOf[IController]).to(classOf[HouseFacadeTest.TestController])
+        bind(classOf[Journal]).toInstance(journal)
+      }
+    })
+    facade = injector.getInstance(classOf[HouseFacade])
+    injector.getInstance(classOf[HouseFacadeTest.Factory]).facade = facade
+    facade.registerCommand("prepare", classOf[ControllerPrepCommand])
+    facade.registerCommand("prepare model", classOf[ModelPrepCommand])
+    facade.sendNotification("prepare", null, null)
+    facade.sendNotification("prepare model", null, null)
+    facade.registerMediator(new Mediator("traces", null) {
+      override def listNotificationInterests = asNames(List(Trace))
+      override def handleNotification(n: INotification) { traces.put(n.getBody.asInstanceOf[GameState]) }
+    })
+    pack.setData(GamePack("rowhouses/rowhouse.homp"))
+  }
+
+  @After def tearDown() {
+    journal.close()
+    file.delete()
+  }
+
+  private def pack = facade.retrieveProxy("GamePack").asInstanceOf[GamePackProxy]
+
+  private def level = facade.retrieveProxy("GameLevel").asInstanceOf[GameLevelProxy]
+
+  private def history = facade.retrieveProxy("History").asInstanceOf[HistoryProxy]
+
+  private def nextTrace: GameState = {
+    val s = traces.poll(10, TimeUnit.SECONDS)
+    assert(s != null)
+    s
+  }
+
+  private def loadLevel(n: Int): GameLevel = {
+    val p = pack.gamePack
+    Swing.onEDTWait { level.loadLevel(n) { pack.newGameLevel(p, n) } }
+    nextTrace
+    level.gameLevel
+  }
+
+  @Test def movesAreTracedAndCanBeUndone() {
+    val g = loadLevel(1)
+    val from = g.moveable_gates(0).position
+    val to = List(Point(from.x, from.y - 1), Point(from.x, from.y + 1), Point(from.x - 1, from.y), Point(from.x + 1, from.y))
+      .find(p => g.moveTo(from, p)).get
+    Swing.onEDTWait { facade.sendNotification(LevelUpdate) }
+    assert(nextTrace.gates.exists(_.position == to))
+
+    Swing.onEDTWait { facade.sendNotification(Undo) }
+    assert(nextTrace.gates.exists(_.position == from))
+    assert(g.gateAt(from).isDefined)
+  }
+
+  @Test def recoveredBoardCannotBeUndone() {
+    val g = pack.newGameLevel(pack.gamePack, 1)
+    val from = g.moveable_gates(0).position
+    val to = List(Point(from.x, from.y - 1), Point(from.x, from.y + 1), Point(from.x - 1, from.y), Point(from.x + 1, from.y))
+      .find(p => g.moveTo(from, p)).get
+    journal.compact(pack.gamePack.resource.get.uri.toString, Set(1), Nil, Some(1), Some(Solution(g)))
+    val m = new JournalMediator(journal, pack, level, history)
+    Swing.onEDTWait { facade.registerMediator(m); assert(m.resume()) }
+    while (!nextTrace.gates.exists(_.position == to)) {}
+
+    Swing.onEDTWait { assert(!level.undo()) }
+    assert(level.gameLevel.gateAt(to).isDefined)
+  }
+
+  @Test def nextGoesOnFromTheLevelBeingLoaded() {
+    loadLevel(1)
+    val p = pack.gamePack
+    p.unlock(2)
+    p.unlock(3)
+    val release = new CountDownLatch(1)
+    Swing.onEDTWait {
+      level.loadLevel(2) { release.await(); pack.newGameLevel(p, 2) }
+      facade.sendNotification(LoadLevel.toString, null, notes.LevelCommands.Next.toString)
+    }
+    expect(Some(3)) { level.requestedLevel }
+    expect(1) { level.gameLevel.level }
+    release.countDown()
+    nextTrace
+    nextTrace
+    expect(3) { level.gameLevel.level }
+    expect(Some(3)) { level.requestedLevel }
+  }
+
+  @Test def reloadKeepsSolutionsOfLevelsNotEdited() {
+    // a binary pack is reloaded with its current level whatever changed
+    val f = File.createTempFile("pack", Resource.BinaryPackExt)
+    try {
+      BinaryFormat.writePack(GamePack("rowhouses/rowhouse.homp"), f)
+      val loaded = new CountDownLatch(1)
+      Swing.onEDTWait { pack.loadPack(f) { loaded.countDown() } }
+      assert(loaded.await(10, TimeUnit.SECONDS))
+      val g = loadLevel(1)
+      history.putSolution(Solution(g))
+      history.putSolution(Solution(pack.newGameLevel(pack.gamePack, 2)))
+
+      Swing.onEDTWait { facade.sendNotification(PackChanged, Set(f.getName)) }
+      nextTrace
+      assert(history.hasGameLevel(1))
+      assert(history.hasGameLevel(2))
+    } finally {
+      f.delete()
+    }
+  }
+}
+
+object HouseFacadeTest {
+
+  class TestController @Inject()(f: CommandFactory) extends Controller(f)
+
+  /** Builds commands with the injector, as the application's factory does, and hands them the facade. */
+  @com.google.inject.Singleton
+  class Factory @Inject()(injector: Injector) extends CommandFactory {
+    var facade: HouseFacade = _
+    override def create(k: Class[_ <: ICommand]): ICommand = {
+      val command = injector.getInstance(k)
+      if (command.isInstanceOf[Notifier]) command.asInstanceOf[Notifier].setFacade(facade)
+      command
+    }
+  }
+}
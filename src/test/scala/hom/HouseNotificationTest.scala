@@ -104,7 +104,7 @@ class HouseNotificationTest extends AssertionsForJUnit {
       d.toString
     }
   }
-  
+
   //org.scalatest.junit.JUnitTestFailedError: Expected "[Tue]", but got "[1]"
   @Test def nameOfTue() {
     import Days._
@@ -0,0 +1,59 @@
+package hom
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import InputBatch._
+
+class InputBatchTest extends AssertionsForJUnit {
+
+  // a row of three cells: a moveable blocker, a free cell, a fixed blocker
+  private def level = new GameLevel(0, "", Bound(0, 0, 3, 1), List(new Blocker(Point(2, 0))), List(new MoveableBlocker(Point(0, 0))))
+
+  @Test def netTurnsIsShortest() {
+    expect(0) { netTurns(8) }
+    expect(1) { netTurns(9) }
+    expect(-1) { netTurns(7) }
+    expect(-1) { netTurns(-1) }
+    expect(4) { netTurns(-4) }
+    expect(-3) { netTurns(-11) }
+  }
+
+  @Test def walkSkipsBlockedSteps() {
+    val g = level
+    expect(Point(1, 0)) { walk(g, Point(0, 0), List((1, 0), (1, 0), (0, 1))) }
+    // back over its own cell, then off the board
+    expect(Point(0, 0)) { walk(g, Point(0, 0), List((1, 0), (-1, 0), (-1, 0))) }
+  }
+
+  @Test def burstsCoalesce() {
+    var applied = List.empty[Op]
+    val sut = new InputBatch(60000)(op => applied ::= op)
+    val p = Point(1, 1)
+    for (i <- 0 until 5) sut.turn(p, 1)
+    sut.turn(p, -2)
+    expect(Nil) { applied }
+    sut.flush()
+    expect(List(Turn(p, 3))) { applied }
+  }
+
+  @Test def otherInputFlushesFirst() {
+    var applied = List.empty[Op]
+    val sut = new InputBatch(60000)(op => applied ::= op)
+    val p = Point(1, 1)
+    sut.move(p, 1, 0)
+    sut.move(p, 0, 1)
+    sut.turn(p, 1)
+    sut.move(Point(2, 2), 0, -1)
+    sut.flush()
+    expect(List(Move(p, List((1, 0), (0, 1))), Turn(p, 1), Move(Point(2, 2), List((0, -1))))) { applied.reverse }
+  }
+
+  @Test def noWindowAppliesAtOnce() {
+    var applied = List.empty[Op]
+    val sut = new InputBatch(0)(op => applied ::= op)
+    sut.turn(Point(0, 0), 1)
+    sut.turn(Point(0, 0), 1)
+    expect(2) { applied.length }
+  }
+}
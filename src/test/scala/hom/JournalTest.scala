@@ -0,0 +1,98 @@
+package hom
+
+import java.io.{File, RandomAccessFile}
+
+import org.junit.{After, Before, Test}
+import org.junit.Assert._
+import org.scalatest.junit.AssertionsForJUnit
+
+class JournalTest extends AssertionsForJUnit {
+
+  private var file: File = _
+
+  private val template = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_1.hom"))
+
+  @Before def setUp() {
+    file = File.createTempFile("journal", ".bin")
+    file.delete()
+  }
+
+  @After def tearDown() {
+    file.delete()
+  }
+
+  private def journal = new Journal(file, 60000, 1000)
+
+  @Test def closingLetsGoOfTheShutdownHook() {
+    val j = journal
+    j.close()
+    // already removed by close
+    assert(!Runtime.getRuntime.removeShutdownHook(j.hook))
+  }
+
+  @Test def nothingToRecover() {
+    assert(journal.recover() === None)
+  }
+
+  @Test def recoversPackLevelAndMoves() {
+    val g = template.instantiate(1)
+    val p = g.moveable_gates(0).position
+    val to = Point(p.x, if (p.y > 0) p.y - 1 else p.y + 1)
+
+    val j = journal
+    j.pack("file:/packs/rowhouse.homp")
+    j.unlock(0)
+    j.unlock(1)
+    j.level(1)
+    j.board(Solution(g))
+    j.move(p, to)
+    j.turn(to, true)
+    j.close()
+
+    val s = journal.recover().get
+    assert(s.pack === Some("file:/packs/rowhouse.homp"))
+    assert(s.unlocked === Set(0, 1))
+    assert(s.level === Some(1))
+
+    val expected = template.instantiate(1)
+    expected.moveTo(p, to)
+    expected.turnCW(to)
+    val restored = s.restore(template.instantiate(1))
+    assert(restored.moveable_gates(0).position === to)
+    assert(restored.moveable_gates(0).asInstanceOf[Oriented].direction === expected.moveable_gates(0).asInstanceOf[Oriented].direction)
+  }
+
+  @Test def tornTailIsDropped() {
+    val j = journal
+    j.pack("file:/packs/rowhouse.homp")
+    j.level(3)
+    j.close()
+    val good = file.length
+    val raf = new RandomAccessFile(file, "rw")
+    raf.seek(good)
+    raf.write(Array[Byte](0, 0, 0, 9, 2, 0)) // a level record cut short
+    raf.close()
+
+    val s = journal.recover().get
+    assert(s.level === Some(3))
+    assert(file.length === good)
+  }
+
+  @Test def compactionKeepsOnlySnapshot() {
+    val j = new Journal(file, 60000, 3)
+    j.pack("file:/packs/rowhouse.homp")
+    for (i <- 0 until 5) j.level(i)
+    assert(j.needsCompaction)
+    val solved = Solution(template.instantiate(1))
+    j.compact("file:/packs/rowhouse.homp", Set(0, 1, 2), List(solved), Some(2), None)
+    assert(!j.needsCompaction)
+    j.move(Point(0, 0), Point(0, 1))
+    j.close()
+
+    val s = journal.recover().get
+    assert(s.unlocked === Set(0, 1, 2))
+    assert(s.solved.keySet === Set(1))
+    assert(s.level === Some(2))
+    assert(s.ops.toList === List(Journal.Move(Point(0, 0), Point(0, 1))))
+  }
+}
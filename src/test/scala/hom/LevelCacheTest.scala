@@ -0,0 +1,105 @@
+package hom
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.AssertionsForJUnit
+
+class LevelCacheTest extends AssertionsForJUnit {
+
+  private def level(n: Int) = Resource(Resource("rowhouses/rowhouse.homp"), "level_" + n + ".hom")
+
+  @Test def instancesDoNotShareMoveableGates() {
+    val t = LevelTemplate(level(1))
+    val a = t.instantiate(1)
+    val b = t.instantiate(1)
+    assert(a.moveable_gates.length === b.moveable_gates.length)
+    for ((x, y) <- a.moveable_gates zip b.moveable_gates) {
+      assertNotSame(x, y)
+      assert(x.position === y.position)
+    }
+    val p = a.moveable_gates(0).position
+    a.moveable_gates(0).asInstanceOf[Moveable].moveTo(Point(p.x + 1, p.y))
+    assert(b.moveable_gates(0).position === p)
+  }
+
+  @Test def templateIsParsedOnce() {
+    val sut = new LevelCache(4, LevelCache.DefaultMaxBytes)
+    val t = sut.template(level(1))
+    assertSame(t, sut.template(level(1)))
+    assert(sut.size === 1)
+  }
+
+  @Test def invalidatedTemplateIsParsedAgain() {
+    val sut = new LevelCache(4, LevelCache.DefaultMaxBytes)
+    val r = level(1)
+    val t = sut.template(r)
+    sut.invalidate(r.uri.toString)
+    assert(sut.size === 0)
+    assertNotSame(t, sut.template(r))
+  }
+
+  @Test def evictsLeastRecentlyUsed() {
+    val sut = new LevelCache(2, LevelCache.DefaultMaxBytes)
+    val one = sut.template(level(1))
+    sut.template(level(2))
+    sut.template(level(1))
+    sut.template(level(3))
+    assert(sut.size === 2)
+    assertSame(one, sut.template(level(1)))
+  }
+
+  @Test def byteBudgetKeepsNewest() {
+    val sut = new LevelCache(10, 1)
+    sut.template(level(1))
+    val two = sut.template(level(2))
+    assert(sut.size === 1)
+    assertSame(two, sut.template(level(2)))
+  }
+
+  @Test def wormholesArePairedInEachInstance() {
+    val t = LevelTemplate(level(17))
+    val g = t.instantiate(17)
+    val holes = g.gates.filter(_.isInstanceOf[WormHole]).map(_.asInstanceOf[WormHole])
+    assert(holes.nonEmpty)
+    for (w <- holes) {
+      assertNotNull(w.twin)
+      assert(w.twin.position === w.other)
+      assertSame(w, w.twin.twin)
+    }
+  }
+
+  @Test def fixedAndMoveableWormholesPair() {
+    val a = new FixedWormHole(Point(0, 0), Point(3, 3))
+    val b = new MoveableWormHole(Point(3, 3), Point(0, 0))
+    val c = new MoveableWormHole(Point(1, 2), Point(2, 1))
+    val d = new MoveableWormHole(Point(2, 1), Point(1, 2))
+    GameLevel.pairWormHoles(List(a), List(b, c, d))
+    assertSame(b, a.twin)
+    assertSame(a, b.twin)
+    assertSame(d, c.twin)
+    assertSame(c, d.twin)
+  }
+
+  @Test def brokenWormholesAreRefused() {
+    val e = intercept[BadLevelException] {
+      new LevelTemplate("", Bound(0, 0, 5, 5),
+        List(new FixedWormHole(Point(0, 0), Point(0, 0)), new FixedWormHole(Point(1, 1), Point(4, 4))),
+        List(new MoveableWormHole(Point(2, 2), Point(3, 3)), new MoveableWormHole(Point(3, 3), Point(2, 2)),
+             new MoveableWormHole(Point(4, 0), Point(3, 3))))
+    }
+    assert(e.problems.length === 3)
+    assert(e.problems(0).contains("leads to itself"))
+    assert(e.problems(1).contains("no wormhole"))
+    assert(e.problems(2).contains("both lead to (3, 3)"))
+  }
+
+  @Test def wormholeCyclesAreRefused() {
+    val e = intercept[BadLevelException] {
+      new LevelTemplate("", Bound(0, 0, 5, 5), Nil,
+        List(new MoveableWormHole(Point(0, 0), Point(1, 1)), new MoveableWormHole(Point(1, 1), Point(2, 2)),
+             new MoveableWormHole(Point(2, 2), Point(0, 0))))
+    }
+    assert(e.problems.length === 3)
+    assert(e.problems(0) === "Wormhole at (0, 0) leads to (1, 1), which leads elsewhere")
+  }
+}
@@ -23,6 +23,18 @@ class LineColorsTest extends AssertionsForJUnit {
       Red + Blue
     }
   }
+
+  @Test
+  def mixingIsByMask() {
+    for (a <- colors; b <- colors) {
+      expect(withRGB(a.r || b.r, a.g || b.g, a.b || b.b)) { a + b }
+    }
+    expect(White) { withRGB(7) }
+    expect(Black) { withRGB(8) }
+    expect(List(Blue, Green, Red)) { White.components }
+    expect(Nil) { Black.components }
+    assert(Cyan.components eq Cyan.components)
+  }
   
 
 }
@@ -0,0 +1,66 @@
+package hom
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class LoaderTest extends AssertionsForJUnit {
+
+  private def waitFor(latch: CountDownLatch) = assert(latch.await(10, TimeUnit.SECONDS))
+
+  @Test def resultIsHandedOnOnTheEDT() {
+    val sut = new Loader
+    val done = new CountDownLatch(1)
+    @volatile var result = 0
+    @volatile var onEDT = false
+    @volatile var failed = false
+    sut(6 * 7) { r =>
+      result = r
+      onEDT = java.awt.EventQueue.isDispatchThread
+      done.countDown()
+    } { t => failed = true; done.countDown() }
+    waitFor(done)
+    expect(42) { result }
+    assert(onEDT)
+    assert(!failed)
+  }
+
+  @Test def failureIsHandedOnOnTheEDT() {
+    val sut = new Loader
+    val done = new CountDownLatch(1)
+    @volatile var failure: Throwable = null
+    @volatile var onEDT = false
+    @volatile var succeeded = false
+    sut[Int](throw new IllegalStateException("expected by the test")) { r => succeeded = true; done.countDown() } { t =>
+      failure = t
+      onEDT = java.awt.EventQueue.isDispatchThread
+      done.countDown()
+    }
+    waitFor(done)
+    assert(failure.isInstanceOf[IllegalStateException])
+    assert(onEDT)
+    assert(!succeeded)
+  }
+
+  @Test def loadsCompleteInOrder() {
+    val sut = new Loader
+    val done = new CountDownLatch(3)
+    val seen = new java.util.Vector[Integer]
+    for (i <- 1 to 3) sut { Thread.sleep(10 * (3 - i)); i } { r => seen.add(r); done.countDown() } { t => }
+    waitFor(done)
+    expect(List(1, 2, 3)) { seen.toArray.toList }
+  }
+
+  @Test def prefetchFillsTemplateCache() {
+    val loader = new Loader
+    val sut = new GamePackProxy(loader)
+    sut.setData(GamePack("rowhouses/rowhouse.homp"))
+    sut.prefetch(List(1, 2, 999))
+    // the prefetch thread runs one piece of work at a time, in order
+    val drained = new CountDownLatch(1)
+    loader.prefetch { drained.countDown() }
+    waitFor(drained)
+    expect(2) { sut.levelCache.size }
+  }
+}
@@ -0,0 +1,107 @@
+package hom
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import org.puremvc.java.core.controller.CommandFactory
+import org.puremvc.java.interfaces.{ICommand, INotification}
+import org.puremvc.java.patterns.command.{MacroCommand, RunsOn, SimpleCommand}
+import org.puremvc.java.patterns.observer.{Affinity, Notification}
+
+import scala.collection.JavaConversions._
+
+object MacroCommandTest {
+  val log = new ConcurrentLinkedQueue[String]
+  @volatile var foregroundDone = new CountDownLatch(1)
+  @volatile var overlapped = false
+
+  class First extends SimpleCommand {
+    override def execute(n: INotification) { log.add("first") }
+  }
+
+  /** Waits for Foreground, so it only finishes if the two run at the same time. */
+  @RunsOn(Affinity.WORKER)
+  class Background extends SimpleCommand {
+    override def execute(n: INotification) {
+      overlapped = foregroundDone.await(10, TimeUnit.SECONDS)
+      log.add("background")
+    }
+  }
+
+  class Foreground extends SimpleCommand {
+    override def execute(n: INotification) {
+      log.add("foreground")
+      foregroundDone.countDown()
+    }
+  }
+
+  class Last extends SimpleCommand {
+    override def execute(n: INotification) { log.add("last") }
+  }
+
+  @RunsOn(Affinity.WORKER)
+  class Broken extends SimpleCommand {
+    override def execute(n: INotification) { throw new IllegalStateException("broken") }
+  }
+}
+
+class MacroCommandTest extends AssertionsForJUnit {
+  import MacroCommandTest._
+
+  private val factory = new CommandFactory {
+    def create(k: Class[_ <: ICommand]): ICommand = k.newInstance
+  }
+
+  @Test def independentCommandsOverlap() {
+    log.clear()
+    foregroundDone = new CountDownLatch(1)
+    val sut = new MacroCommand(factory) {
+      override def initializeMacroCommand() {
+        addSubCommand(classOf[First])
+        addSubCommand(classOf[Background], classOf[First])
+        addSubCommand(classOf[Foreground], classOf[First])
+        addSubCommand(classOf[Last], classOf[Background], classOf[Foreground])
+      }
+    }
+    sut.execute(new Notification("go", null, null))
+    assert(overlapped)
+    expect(List("first", "foreground", "background", "last")) { log.toList }
+  }
+
+  @Test def commandsWithoutDependenciesRunInOrder() {
+    log.clear()
+    val sut = new MacroCommand(factory) {
+      override def initializeMacroCommand() {
+        addSubCommand(classOf[Last])
+        addSubCommand(classOf[First])
+      }
+    }
+    sut.execute(new Notification("go", null, null))
+    expect(List("last", "first")) { log.toList }
+  }
+
+  @Test def failureOnWorkerIsPassedOn() {
+    val sut = new MacroCommand(factory) {
+      override def initializeMacroCommand() {
+        addSubCommand(classOf[First])
+        addSubCommand(classOf[Broken], classOf[First])
+        addSubCommand(classOf[Last], classOf[First])
+      }
+    }
+    intercept[IllegalStateException] {
+      sut.execute(new Notification("go", null, null))
+    }
+  }
+
+  @Test def dependenciesMustBeAddedFirst() {
+    intercept[IllegalArgumentException] {
+      new MacroCommand(factory) {
+        override def initializeMacroCommand() {
+          addSubCommand(classOf[Last], classOf[First])
+        }
+      }
+    }
+  }
+}
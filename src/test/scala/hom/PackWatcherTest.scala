@@ -0,0 +1,49 @@
+package hom
+
+import java.io.{File, FileWriter}
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+
+import org.junit.{After, Before, Test}
+import org.scalatest.junit.AssertionsForJUnit
+
+class PackWatcherTest extends AssertionsForJUnit {
+
+  private var dir: File = _
+
+  @Before def makeDir() {
+    dir = java.nio.file.Files.createTempDirectory("hom-watch").toFile
+  }
+
+  @After def removeDir() {
+    for (f <- dir.listFiles) f.delete()
+    dir.delete()
+  }
+
+  private def write(name: String, text: String) {
+    val w = new FileWriter(new File(dir, name))
+    try { w.write(text) } finally { w.close() }
+  }
+
+  @Test def burstIsHandedOnOnce() {
+    val seen = new LinkedBlockingQueue[Set[String]]
+    val sut = new PackWatcher(dir, 500)(names => seen.put(names))
+    try {
+      write("level_1.hom", "a")
+      write("level_1.hom", "ab")
+      write("pack.homp", "c")
+      expect(Set("level_1.hom", "pack.homp")) { seen.poll(10, TimeUnit.SECONDS) }
+      expect(null) { seen.poll(1, TimeUnit.SECONDS) }
+    } finally {
+      sut.close()
+    }
+  }
+
+  @Test def levelsAreFoundByFileName() {
+    val from = Resource("rowhouses/rowhouse.homp")
+    val packFile = new File(dir, "rowhouse.homp")
+    java.nio.file.Files.copy(from.openStream(), packFile.toPath)
+    val p = GamePack(packFile)
+    expect(Set(1, 10)) { p.levelsNamed(Set("level_1.hom", "level_10.hom", "rowhouse.homp", "notes.txt")) }
+    assert(p.levelsNamed(Set.empty).isEmpty)
+  }
+}
@@ -0,0 +1,32 @@
+package hom
+
+/**
+ * Compares the document (scala.xml) and streaming (StAX) level parsers.
+ * Run from the test classpath: scala hom.ParseBench [rounds]
+ */
+object ParseBench {
+
+  def main(args: Array[String]) {
+    val rounds = if (args.length > 0) args(0).toInt else 200
+    val pack = GamePack("rowhouses/rowhouse.homp")
+    val levels = (0 to pack.maxLevel).filter(pack.isLevelDefined).map(n => (pack.levelResource(n), n))
+    // read the bytes up front, so only parsing is measured
+    val bytes = levels.map { case (r, n) =>
+      val in = r.openStream()
+      try { (Iterator.continually(in.read).takeWhile(_ >= 0).map(_.toByte).toArray, n) } finally { in.close() }
+    }
+    def dom() = for ((b, n) <- bytes) GameLevel.fromXML(scala.xml.XML.load(new java.io.ByteArrayInputStream(b)), n)
+    def stax() = for ((b, n) <- bytes) HomReader.readLevel(new java.io.ByteArrayInputStream(b)).instantiate(n)
+    // warm up
+    for (i <- 0 until rounds / 4) { dom(); stax() }
+    report("document", rounds, bytes.length)(dom())
+    report("streaming", rounds, bytes.length)(stax())
+  }
+
+  private def report(name: String, rounds: Int, perRound: Int)(f: => Unit) {
+    val start = System.nanoTime
+    for (i <- 0 until rounds) f
+    val micros = (System.nanoTime - start) / 1000.0 / (rounds * perRound)
+    println("%-10s %8.1f us/level".format(name, micros))
+  }
+}
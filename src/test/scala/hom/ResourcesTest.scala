@@ -69,4 +69,51 @@ class ResourcesTest extends AssertionsForJUnit {
     assert(red.uri.toString.startsWith("jar:file:"))
     assert(red.uri.toString.endsWith("!/images/reddot.gif"))
   }
+
+  @Test def resolutionIsCached() {
+    val f = "rowhouses/trial.homp"
+    assertSame(Resource(f), Resource(f))
+    val r = Resource(f)
+    assertSame(Resource(r, "trial-welcome.hom"), Resource(r, "trial-welcome.hom"))
+  }
+
+  @Test def changedFileIsResolvedAgain() {
+    val dir = java.nio.file.Files.createTempDirectory("hom").toFile
+    val level = new java.io.File(dir, "x.hom")
+    try {
+      java.nio.file.Files.write(level.toPath, "<x/>".getBytes("UTF-8"))
+      level.setLastModified(1000000L)
+      val base = Resource(new java.io.File(dir, "x.homp"))
+      val first = Resource(base, "x.hom")
+      assertSame(first, Resource(base, "x.hom"))
+      level.setLastModified(2000000L)
+      assertNotSame(first, Resource(base, "x.hom"))
+    } finally {
+      level.delete()
+      dir.delete()
+    }
+  }
+
+  @Test def readsJarEntryThroughIndex() {
+    val base = Resource("images/bluedot.gif")
+    val red = Resource(base, "reddot.gif")
+    val expected = readAll(red.uri.toURL.openStream)
+    assert(expected.length > 0)
+    assert(java.util.Arrays.equals(expected, readAll(red.openStream())))
+  }
+
+  private def readAll(in: java.io.InputStream): Array[Byte] = {
+    val out = new java.io.ByteArrayOutputStream
+    try {
+      val buf = new Array[Byte](4096)
+      var n = in.read(buf)
+      while (n >= 0) {
+        out.write(buf, 0, n)
+        n = in.read(buf)
+      }
+    } finally {
+      in.close()
+    }
+    out.toByteArray
+  }
 }
@@ -0,0 +1,75 @@
+package hom
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.AssertionsForJUnit
+
+import Directions._
+
+class SolutionTest extends AssertionsForJUnit {
+
+  private val template = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_17.hom"))
+
+  @Test def restoresMovedAndTurnedGates() {
+    val solved = template.instantiate(17)
+    for (m <- solved.moveable_gates) {
+      val p = m.position
+      solved.moveTo(p, Point(p.x, p.y + 1)) || solved.moveTo(p, Point(p.x + 1, p.y))
+    }
+    for (t <- solved.moveable_gates if t.isInstanceOf[Turnable]) solved.turnCW(t.position)
+    val s = Solution(solved)
+    assert(s.numGates === solved.moveable_gates.length)
+
+    val restored = s.applyTo(template.instantiate(17))
+    for ((a, b) <- solved.moveable_gates zip restored.moveable_gates) {
+      assert(b.position === a.position)
+      (a, b) match {
+        case (x: Oriented, y: Oriented) => assert(y.direction === x.direction)
+        case _ =>
+      }
+    }
+    // wormholes follow their twins
+    for (w <- restored.moveable_gates if w.isInstanceOf[WormHole]) {
+      assert(w.asInstanceOf[WormHole].twin.twin === w)
+    }
+  }
+
+  @Test def keepsNegativeCoordinates() {
+    def level = new GameLevel(5, "", Bound(-8, -8, 4, 4), Nil, List(new MoveableMirror(Point(-6, -7), South)))
+    val solved = level
+    assert(solved.moveTo(Point(-6, -7), Point(-5, -8)))
+    solved.turnCW(Point(-5, -8))
+    val out = new java.io.ByteArrayOutputStream
+    Solution(solved).write(new java.io.DataOutputStream(out))
+    val s = Solution.read(new java.io.DataInputStream(new java.io.ByteArrayInputStream(out.toByteArray)))
+    val restored = s.applyTo(level).moveable_gates(0)
+    expect(Point(-5, -8)) { restored.position }
+    expect(solved.moveable_gates(0).asInstanceOf[Oriented].direction) { restored.asInstanceOf[Oriented].direction }
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def rejectsOtherLevel() {
+    Solution(template.instantiate(17)).applyTo(LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_1.hom")).instantiate(17))
+  }
+
+  @Test def historyTakesUpdatesWhileItIsRead() {
+    val sut = new HistoryProxy
+    val g = template.instantiate(17)
+    val writers = (0 until 4).map { t =>
+      new Thread(new Runnable {
+        def run() {
+          for (i <- 0 until 2000) {
+            sut.putSolution(new Solution(t * 2000 + i, Array.empty[Int]))
+            if (i % 3 == 0) sut.forget(t * 2000 + i)
+          }
+        }
+      })
+    }
+    writers.foreach(_.start())
+    while (writers.exists(_.isAlive)) sut.solutions.foreach(s => assert(s != null))
+    expect(4 * 2000 - 4 * 667) { sut.solutions.length }
+    sut.putGameLevel(g)
+    assert(sut.hasGameLevel(17))
+    intercept[NoSuchElementException] { sut.solution(-1) }
+  }
+}
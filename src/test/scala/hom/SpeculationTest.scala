@@ -0,0 +1,107 @@
+package hom
+
+import java.util.concurrent.{CancellationException, CountDownLatch, TimeUnit}
+
+import scala.swing.Swing
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class SpeculationTest extends AssertionsForJUnit {
+
+  private val template = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_17.hom"))
+
+  @Test def copyIsIndependent() {
+    val g = template.instantiate(17)
+    val c = g.copy
+    val m = c.moveable_gates(0)
+    val p = m.position
+    val to = Point(p.x, if (p.y > 0) p.y - 1 else p.y + 1)
+    assert(c.moveTo(p, to) || c.moveTo(p, Point(p.x + 1, p.y)))
+    assert(g.moveable_gates(0).position === p)
+    assert(c.moveable_gates(0) ne g.moveable_gates(0))
+  }
+
+  @Test def copiedWormHolesArePaired() {
+    val c = template.instantiate(17).copy
+    val holes = c.gates.collect { case w: WormHole => w }
+    assert(!holes.isEmpty)
+    for (w <- holes) {
+      assert(w.twin != null)
+      assert(w.twin.twin eq w)
+      assert(c.gates.exists(_ eq w.twin))
+    }
+  }
+
+  @Test def copyTracesLikeOriginal() {
+    val g = template.instantiate(17)
+    expect(g.trace.segments.toSet) { g.copy.trace.segments.toSet }
+  }
+
+  @Test def interruptedTraceIsAbandoned() {
+    val g = template.instantiate(17)
+    Thread.currentThread.interrupt()
+    try {
+      intercept[CancellationException] { g.trace }
+    } finally {
+      Thread.interrupted()
+    }
+  }
+
+  @Test def cancelledSpeculationIsNotShown() {
+    val loader = new Loader
+    val started, release = new CountDownLatch(1)
+    @volatile var shown = false
+    val f = loader.speculate { started.countDown(); release.await(); 1 } { x => shown = true }
+    started.await(10, TimeUnit.SECONDS)
+    f.cancel(true)
+    release.countDown()
+    val shownLater = new CountDownLatch(1)
+    loader.speculate(2) { x => shownLater.countDown() }
+    assert(shownLater.await(10, TimeUnit.SECONDS))
+    assert(!shown)
+  }
+
+  @Test def rotationsCoverTurnsOfOneGateOnly() {
+    // level 10 has a turnable mirror among other moveable gates
+    val g = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_10.hom")).instantiate(10)
+    val turnable = g.moveable_gates.find(_.isInstanceOf[Turnable]).get
+    val at = turnable.position
+    val c = g.copy
+    var states = Map.empty[Directions.Direction, GameState]
+    for (i <- 0 until 8) {
+      c.turnCW(at)
+      states += (c.moveable_gates.find(_.position == at).get.asInstanceOf[Oriented].direction -> c.trace)
+    }
+    val sut = new Rotations(at, Rotations.board(g, at), states)
+
+    g.turnCW(at)
+    g.turnCW(at)
+    expect(Some(g.trace.segments.toSet)) { sut.stateOf(g).map(_.segments.toSet) }
+
+    val other = g.moveable_gates.find(_.position != at).get.position
+    val moved = List((0, 1), (1, 0), (0, -1), (-1, 0)).exists { case (dx, dy) => g.moveTo(other, Point(other.x + dx, other.y + dy)) }
+    if (!moved) g.turnCW(other)
+    expect(None) { sut.stateOf(g) }
+  }
+
+  @Test def rotationsShowTheGatesOfTheLevel() {
+    val loader = new Loader
+    val sut = new GameLevelProxy(loader)
+    val g = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_10.hom")).instantiate(10)
+    val at = g.moveable_gates.find(_.isInstanceOf[Turnable]).get.position
+    sut.setData(g)
+    Swing.onEDTWait { sut.traceRotations(at) }
+    // the speculations are shown on the EDT in the order they were made
+    val shown = new CountDownLatch(1)
+    loader.speculate(()) { x => shown.countDown() }
+    assert(shown.await(10, TimeUnit.SECONDS))
+    g.turnCW(at)
+    val trace = sut.trace
+    val turned = trace.gates.find(_.position == at).get
+    assert(turned eq g.gateAt(at).get)
+    for (x <- trace.gates if !x.isInstanceOf[Detector]) assert(g.gates.exists(_ eq x))
+    expect(g.gates.map(_.position).toSet) { trace.gates.map(_.position).toSet }
+    expect(g.trace.status.score) { trace.status.score }
+  }
+}
@@ -0,0 +1,64 @@
+package hom
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import Directions._
+import LineColors._
+
+class TraceBudgetTest extends AssertionsForJUnit {
+
+  private val template = LevelTemplate(Resource(Resource("rowhouses/rowhouse.homp"), "level_10.hom"))
+
+  // a white source into a grid of partial mirrors, each of which splits every ray that reaches it
+  private def splitters(size: Int) = new GameLevel(0, "", Bound(0, 0, size, size),
+    new Source(Point(-1, 0), East, White) ::
+      (for (x <- 0 until size; y <- 0 until size) yield new PartialMirror(Point(x, y), if ((x + y) % 2 == 0) Northeast else Northwest): Gate).toList,
+    Nil)
+
+  @Test def ordinaryLevelIsTracedInFull() {
+    val g = template.instantiate(10)
+    val s = g.trace
+    assert(!s.truncated)
+    assert(!s.status.truncated)
+  }
+
+  @Test def spentBudgetStopsTheTrace() {
+    val g = template.instantiate(10)
+    val full = g.trace
+    g.traceBudget = TraceBudget(1, TraceBudget.DefaultSegments, TraceBudget.DefaultMillis)
+    val s = g.trace
+    assert(s.truncated)
+    assert(s.segments.length < full.segments.length)
+    assert(!s.status.isComplete)
+  }
+
+  @Test def branchingLevelStopsInTime() {
+    val g = splitters(8)
+    g.traceBudget = TraceBudget(Int.MaxValue, Int.MaxValue, 100)
+    val start = System.currentTimeMillis
+    val s = g.trace
+    assert(s.truncated)
+    assert(System.currentTimeMillis - start < 5000)
+    g.traceBudget = TraceBudget(Int.MaxValue, 1000, 60000)
+    val capped = g.trace
+    assert(capped.truncated)
+    // each ray already on its way, at most one per gate it went through, still ends in a segment
+    assert(capped.segments.length < 2000)
+  }
+
+  @Test def packSetsItsOwnLimits() {
+    val xml = "<HoMPack><unlocked><ulevel id=\"0\"/></unlocked><traceBudget rays=\"10\" millis=\"20\"/>" +
+      "<level id=\"0\" file=\"welcome.hom\"/></HoMPack>"
+    val p = HomReader.readPack(new java.io.ByteArrayInputStream(xml.getBytes("UTF-8")))
+    expect(TraceBudget(10, TraceBudget.fromProperties.segments, 20)) { p.traceBudget }
+    // only what the pack declares is kept, and written back
+    expect(Some(TraceLimits(Some(10), None, Some(20L)))) { p.traceLimits }
+    expect(p.traceLimits) { GamePack.fromXML(p.toXML).traceLimits }
+    val w = new java.io.StringWriter
+    new HomWriter(w).pack(p)
+    assert(!w.toString.contains("segments"))
+    expect(p.traceLimits) { HomReader.readPack(new java.io.ByteArrayInputStream(w.toString.getBytes("UTF-8"))).traceLimits }
+    expect(None) { GamePack("rowhouses/rowhouse.homp").traceLimits }
+  }
+}
@@ -0,0 +1,79 @@
+package hom
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import Directions._
+
+class UndoHistoryTest extends AssertionsForJUnit {
+
+  private def level = new GameLevel(0, "", Bound(0, 0, 4, 4), List(new Blocker(Point(3, 3))),
+    List(new MoveableMirror(Point(1, 0), South), new MoveableBlocker(Point(2, 2))))
+
+  @Test def versionsAreImmutable() {
+    val g = level
+    val before = g.version
+    assert(g.moveTo(Point(1, 0), Point(1, 1)))
+    assert(g.turnCW(Point(1, 1)))
+    val after = g.version
+    assert(before ne after)
+    g.restore(before)
+    expect(Point(1, 0)) { g.moveable_gates(0).position }
+    expect(South) { g.moveable_gates(0).asInstanceOf[Oriented].direction }
+    assert(g.occupied(Point(1, 0)))
+    assert(!g.occupied(Point(1, 1)))
+    assert(g.version eq before)
+    g.restore(after)
+    expect(Point(1, 1)) { g.moveable_gates(0).position }
+    expect(Southwest) { g.moveable_gates(0).asInstanceOf[Oriented].direction }
+  }
+
+  @Test def restoreSwapsGates() {
+    val g = level
+    val before = g.version
+    assert(g.moveTo(Point(1, 0), Point(0, 0)))
+    assert(g.moveTo(Point(2, 2), Point(1, 0)))
+    assert(g.moveTo(Point(0, 0), Point(2, 2)))
+    g.restore(before)
+    expect(Some(g.moveable_gates(0))) { g.gateAt(Point(1, 0)) }
+    expect(Some(g.moveable_gates(1))) { g.gateAt(Point(2, 2)) }
+    expect(None) { g.gateAt(Point(0, 0)) }
+  }
+
+  @Test def undoAndRedo() {
+    val g = level
+    val sut = new UndoHistory(10)
+    val v0 = g.version
+    g.moveTo(Point(1, 0), Point(1, 1))
+    sut.record(v0)
+    val v1 = g.version
+    g.moveTo(Point(1, 1), Point(1, 2))
+    sut.record(v1)
+    val v2 = g.version
+    expect(Some(v1)) { sut.undo(v2) }
+    expect(Some(v0)) { sut.undo(v1) }
+    expect(None) { sut.undo(v0) }
+    expect(Some(v1)) { sut.redo(v0) }
+    // a new change forgets what was undone
+    sut.record(v1)
+    assert(!sut.canRedo)
+    expect(Some(v1)) { sut.undo(g.version) }
+  }
+
+  @Test def depthIsBounded() {
+    val g = level
+    val sut = new UndoHistory(3)
+    for (i <- 0 until 10) {
+      val before = g.version
+      g.turnCW(Point(1, 0))
+      sut.record(before)
+    }
+    var undone = 0
+    var now = g.version
+    while (sut.canUndo) {
+      now = sut.undo(now).get
+      undone += 1
+    }
+    expect(3) { undone }
+  }
+}
@@ -0,0 +1,43 @@
+package hom.junit
+
+import org.scalatest.junit.AssertionsForJUnit
+
+import hom._
+
+trait LevelUnitHelper {
+  this: AssertionsForJUnit =>
+
+  /**
+   * Passes if two levels have the same description, bounds and gates,
+   * the gates in the same order and state.
+   */
+  def assertSameLevel(expected: GameLevel, actual: GameLevel) {
+    assertSameDescription(expected.description, actual.description)
+    assert(actual.bounds === expected.bounds)
+    assertSameGates(expected.fixed_gates, actual.fixed_gates)
+    assertSameGates(expected.moveable_gates, actual.moveable_gates)
+  }
+
+  /** Descriptions must be equal as strings, unless a test says otherwise. */
+  def assertSameDescription(expected: String, actual: String) {
+    assert(actual === expected)
+  }
+
+  def assertSameGates(expected: List[Gate], actual: List[Gate]) {
+    assert(actual.length === expected.length)
+    for ((e, a) <- expected zip actual) {
+      assert(a.getClass === e.getClass)
+      assert(a.position === e.position)
+      (e, a) match {
+        case (x: Oriented, y: Oriented) => assert(y.direction === x.direction)
+        case _ =>
+      }
+      (e, a) match {
+        case (x: Source, y: Source) => assert(y.color === x.color)
+        case (x: Detector, y: Detector) => assert(y.wavelength === x.wavelength)
+        case (x: WormHole, y: WormHole) => assert(y.twin.position === x.twin.position)
+        case _ =>
+      }
+    }
+  }
+}